@@ -0,0 +1,105 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import main.java.models.BlockCursor;
+import main.java.models.DataBlock;
+import main.java.models.InMemoryBlockSource;
+import main.java.models.Individual;
+import main.java.models.Operators;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.Dataset;
+
+/**
+ * Rows per second of the block evaluator with the scalar and the Vector API operator loops.
+ * data/BTC_train.csv is repeated up to the requested row count and a fixed set of random
+ * trees over the given function set is evaluated over every block. The "rows" counter is
+ * the figure to compare.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class GPEvaluationBenchmark {
+    @Param({"1000000", "4000000"})
+    public int rows;
+
+    @Param({"scalar", "vector"})
+    public String backend;
+
+    @Param({"basic", "extended"})
+    public String functionSet;
+
+    private static final int TREES = 20;
+
+    private InMemoryBlockSource data;
+    private List<Individual> trees;
+    private double[] out;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rows = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        boolean vector = backend.equals("vector");
+        if (Operators.setVectorBackend(vector) != vector) {
+            throw new IllegalStateException("Vector backend requested but not available");
+        }
+        Dataset source = Dataset.fromCsv(new File("data/BTC_train.csv"));
+        data = new InMemoryBlockSource(source.numFeatures(), InMemoryBlockSource.DEFAULT_BLOCK_SIZE);
+        for (int i = 0; i < rows; i++) {
+            data.add(source.getRow(i % source.numRows()), source.getLabel(i % source.numRows()));
+        }
+        trees = new ArrayList<>();
+        String[] symbols = functionSet.equals("extended") ? Operators.EXTENDED : Operators.BASIC;
+        for (int t = 0; t < TREES; t++) {
+            trees.add(Individual.generateRandom(source.numFeatures(), new SplittableRandom(t), Operators.resolve(symbols)));
+        }
+        out = new double[data.blockSize()];
+    }
+
+    @Benchmark
+    public double evaluate(Counters counters) {
+        double checksum = 0;
+        for (Individual tree : trees) {
+            try (BlockCursor cursor = data.openCursor()) {
+                DataBlock block;
+                while ((block = cursor.next()) != null) {
+                    tree.evaluate(block, out);
+                    checksum += out[0];
+                    counters.rows += block.size;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return checksum;
+    }
+}
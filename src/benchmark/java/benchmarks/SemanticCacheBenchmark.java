@@ -0,0 +1,66 @@
+package benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import main.java.models.InMemoryBlockSource;
+import main.java.models.SemanticCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Semantic cache lookups per second with several evaluation workers sharing one cache, as
+ * in the parallel breed-and-score loop. One segment is a single lock; compare it with the
+ * striped default. Keys are drawn from a working set about twice the cache's capacity, so
+ * roughly half the lookups miss and insert. Run with -t to change the thread count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class SemanticCacheBenchmark {
+    @Param({"1", "16"})
+    public int segments;
+
+    private static final long CACHE_BYTES = 64L << 20;
+
+    private SemanticCache cache;
+    private double[] vector;
+    private int workingSet;
+
+    @State(Scope.Thread)
+    public static class Keys {
+        private final SplittableRandom random = new SplittableRandom(Thread.currentThread().getId());
+    }
+
+    @Setup
+    public void setUp() {
+        cache = new SemanticCache(CACHE_BYTES, segments);
+        vector = new double[InMemoryBlockSource.DEFAULT_BLOCK_SIZE];
+        workingSet = (int) (2 * CACHE_BYTES / (vector.length * 8L));
+    }
+
+    @Benchmark
+    public double[] lookup(Keys keys) {
+        // Mixed like the evaluator's keys, which combine a subtree hash and a block id
+        long key = keys.random.nextInt(workingSet) * 0x9e3779b97f4a7c15L;
+        double[] cached = cache.get(key);
+        if (cached == null) {
+            cache.put(key, vector);
+            return vector;
+        }
+        return cached;
+    }
+}
@@ -0,0 +1,40 @@
+package classifiers;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * A classifier that scores a whole block of rows in one call. Results are returned in row
+ * order and do not depend on earlier calls, unlike scoring row by row through a cache.
+ */
+public interface BatchClassifier {
+    // Predicted class (0 or 1) for every instance
+    double[] classifyBatch(Instances data) throws Exception;
+
+    // Probability of class 1 for every instance
+    double[] distributionBatch(Instances data) throws Exception;
+
+    // As classifyBatch(Instances), for primitive rows given column by column: columns[f][i]
+    // is feature f of row i
+    double[] classifyBatch(double[][] columns, int numRows) throws Exception;
+
+    double[] distributionBatch(double[][] columns, int numRows) throws Exception;
+
+    // Probability of class 1 above which classifyBatch predicts class 1
+    default double decisionThreshold() {
+        return 0.5;
+    }
+
+    // Copies the features (every attribute but the last) of data into columns
+    static double[][] toColumns(Instances data) {
+        int numFeatures = data.numAttributes() - 1;
+        double[][] columns = new double[numFeatures][data.numInstances()];
+        for (int i = 0; i < data.numInstances(); i++) {
+            Instance instance = data.instance(i);
+            for (int j = 0; j < numFeatures; j++) {
+                columns[j][i] = instance.value(j);
+            }
+        }
+        return columns;
+    }
+}
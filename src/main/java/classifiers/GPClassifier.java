@@ -5,26 +5,107 @@ import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
+import main.java.models.BlockCursor;
+import main.java.models.BlockSource;
+import main.java.models.Calibration;
+import main.java.models.DataBlock;
+import main.java.models.InMemoryBlockSource;
+import main.java.models.OffHeapBlockSource;
 import main.java.models.Individual;
+import main.java.models.Operators;
 import main.java.models.Population;
+import main.java.models.RandomStreams;
+import main.java.models.WritableBlockSource;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import utils.Dataset;
+import utils.Metrics;
 
-public class GPClassifier extends AbstractClassifier {
-    private Population population;
+public class GPClassifier extends AbstractClassifier implements WarmStartClassifier, BatchClassifier {
+    private static final long serialVersionUID = 1L;
+    // The population holds the training data and random streams; a saved model only needs the
+    // best tree and its calibration, so neither it nor the Pareto front is serialized
+    private transient Population population;
     private Individual bestIndividual;
-    private Random random;
+    // Maps the best tree's raw output to a probability and decision threshold
+    private Calibration calibration;
     private int populationSize = 50;
     private int generations = 30;
     private double mutationRate = 0.2;
     private double crossoverRate = 0.8;
     private long seed;
     private int noImprovementLimit = 8;
+    private boolean warmStart = false;
+    private int warmStartGenerations = 10;
+    private double warmStartFraction = 0.2;
+    private int blockSize = InMemoryBlockSource.DEFAULT_BLOCK_SIZE;
+    private boolean offHeap = false;
+    private double sampleFraction = 1.0;
+    private Population.SubsetStrategy subsetStrategy = null;
+    private int subsetSize = 0;
+    private int subsetEliteSize = 5;
+    // Number of completed training runs; each run evolves from a seed derived from it
+    private int trainingRuns = 0;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long semanticCacheBytes = 0;
+    private String[] functionSet = Operators.BASIC;
+    private boolean multiObjective = false;
+    private double accuracyTolerance = 0.0;
+    private boolean racing = false;
+    private double racingQuantile = 0.5;
+    private double racingDelta = 0.0;
+    private Population.DuplicateStrategy duplicateStrategy = null;
+    private transient List<Individual> paretoFront = new ArrayList<>();
+    // Rows sampled for fitting the calibration
+    private static final int MAX_CALIBRATION_ROWS = 1 << 18;
+    // Periodic checkpoints of a running evolution; see setCheckpoint
+    private static final int CHECKPOINT_MAGIC = 0x47504350; // "GPCP"
+    private static final int CHECKPOINT_VERSION = 3;
+    private File checkpointFile;
+    private int checkpointInterval = 0;
+    private transient ExecutorService checkpointWriter;
+    // Newest encoded checkpoint not yet on disk; the writer only ever stores the latest one
+    private transient AtomicReference<byte[]> pendingCheckpoint;
+    // Per-thread row buffer for classifyInstance, so scoring a row allocates nothing
+    private static final ThreadLocal<double[][]> featureBuffer = ThreadLocal.withInitial(() -> new double[1][0]);
 
     public void setSeed(long seed) {
         this.seed = seed;
-        this.random = new Random(seed);
+    }
+
+    public void setPopulationSize(int populationSize) {
+        this.populationSize = populationSize;
+    }
+
+    /**
+     * Set the maximum number of generations evolved from scratch
+     */
+    public void setGenerations(int generations) {
+        this.generations = generations;
+    }
+
+    public void setMutationRate(double mutationRate) {
+        this.mutationRate = mutationRate;
+    }
+
+    public void setCrossoverRate(double crossoverRate) {
+        this.crossoverRate = crossoverRate;
     }
 
     /**
@@ -34,36 +115,223 @@ public class GPClassifier extends AbstractClassifier {
         this.noImprovementLimit = limit;
     }
 
+    /**
+     * Set the number of rows per block used when loading Weka instances or a Dataset
+     */
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Set the fraction of blocks sampled to score each generation (1.0 = all data)
+     */
+    public void setSubsampleFraction(double sampleFraction) {
+        this.sampleFraction = sampleFraction;
+    }
+
+    /**
+     * Score each generation on a rotating subset of about subsetSize rows; only the eliteSize
+     * best individuals are re-scored on the full data. Pass null to evaluate every row.
+     */
+    public void setSubsetFitness(Population.SubsetStrategy strategy, int subsetSize, int eliteSize) {
+        this.subsetStrategy = strategy;
+        this.subsetSize = subsetSize;
+        this.subsetEliteSize = eliteSize;
+    }
+
+    /**
+     * Set the number of threads used to breed and score offspring; the evolved program does
+     * not depend on it
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Enable incremental evaluation with a cache of subtree outputs of at most maxBytes
+     * (0 disables it). Only resident training data is cached.
+     */
+    public void setSemanticCacheSize(long maxBytes) {
+        this.semanticCacheBytes = maxBytes;
+    }
+
+    /**
+     * Set the operators random trees are grown from, by symbol (e.g. Operators.EXTENDED).
+     * Defaults to + - * /.
+     */
+    public void setFunctionSet(String... symbols) {
+        Operators.resolve(symbols);
+        this.functionSet = symbols.clone();
+    }
+
+    /**
+     * Evolve accuracy and program size together (NSGA-II). The final model is the smallest
+     * program on the Pareto front whose training accuracy is within accuracyTolerance of the
+     * most accurate one.
+     */
+    public void setMultiObjective(boolean multiObjective, double accuracyTolerance) {
+        this.multiObjective = multiObjective;
+        this.accuracyTolerance = accuracyTolerance;
+    }
+
+    /**
+     * Stop scoring an offspring once it can no longer reach the fitness at quantile of its
+     * parents (e.g. 0.5 = the median); it keeps the accuracy of the rows seen so far. A delta
+     * above 0 also stops offspring whose Hoeffding bound falls below that fitness with
+     * confidence 1 - delta. Rows are raced a block at a time, so smaller blocks stop earlier.
+     * Ignored for subset fitness and multi-objective runs.
+     */
+    public void setRacing(boolean racing, double quantile, double delta) {
+        this.racing = racing;
+        this.racingQuantile = quantile;
+        this.racingDelta = delta;
+    }
+
+    /**
+     * Handle offspring that repeat a program of the same generation (up to the order of the
+     * arguments of + and *): REPLACE them with fresh random programs or SKIP scoring them.
+     * Pass null to keep duplicates. The unique-program count is logged every generation.
+     */
+    public void setDeduplication(Population.DuplicateStrategy strategy) {
+        this.duplicateStrategy = strategy;
+    }
+
+    /**
+     * Save the evolving population to file every everyGenerations generations (0 disables
+     * checkpoints). Checkpoints are encoded between generations and written by a background
+     * thread. If the file holds a checkpoint of the same run when training starts (same seed,
+     * training run, data shape, population size, function set and mutation and crossover
+     * rates), evolution resumes from it and finishes with the same program as an
+     * uninterrupted run. The file is removed once training completes.
+     */
+    public void setCheckpoint(File file, int everyGenerations) {
+        this.checkpointFile = file;
+        this.checkpointInterval = everyGenerations;
+    }
+
+    /**
+     * Keep the training rows in direct buffers outside the Java heap instead of heap arrays,
+     * so collections during evolution only trace the program trees. Fitness is unchanged.
+     */
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    @Override
+    public void setWarmStart(boolean warmStart) {
+        this.warmStart = warmStart;
+    }
+
+    /**
+     * Set the number of generations used when continuing from a previous population
+     */
+    public void setWarmStartGenerations(int warmStartGenerations) {
+        this.warmStartGenerations = warmStartGenerations;
+    }
+
+    /**
+     * Set the fraction of the new population seeded with the previous run's best individuals
+     */
+    public void setWarmStartFraction(double warmStartFraction) {
+        this.warmStartFraction = warmStartFraction;
+    }
+
     @Override
     public void buildClassifier(Instances data) throws Exception {
         if (data.classIndex() != data.numAttributes() - 1) {
             throw new Exception("Class attribute must be the last attribute");
         }
+        long trainingStart = Metrics.startTimer();
 
-        // Convert Weka instances to DataPoints
-        List<Individual.DataPoint> trainingData = new ArrayList<>();
+        // Copy Weka instances straight into columnar blocks through one reusable row buffer
+        int numFeatures = data.numAttributes() - 1;
+        WritableBlockSource trainingData = newTrainingSource(numFeatures);
+        double[] features = new double[numFeatures];
         for (int i = 0; i < data.numInstances(); i++) {
             Instance instance = data.instance(i);
-            double[] features = new double[data.numAttributes() - 1];
-            for (int j = 0; j < data.numAttributes() - 1; j++) {
+            for (int j = 0; j < numFeatures; j++) {
                 features[j] = instance.value(j);
             }
-            double label = instance.classValue();
-            trainingData.add(new Individual.DataPoint(features, label));
+            trainingData.add(features, instance.classValue());
         }
+        train(trainingData);
+        Metrics.stopTimer(Metrics.FOLD_TRAINING_TIME, trainingStart);
+    }
 
-        // Initialize population
-        population = new Population(populationSize, trainingData, random);
-        
-        // Evolve population
+    /**
+     * Trains directly from primitive feature rows (e.g. the output of utils.FeaturePipeline)
+     * without building Weka Instances.
+     */
+    public void buildClassifier(Dataset data) throws Exception {
+        long trainingStart = Metrics.startTimer();
+        WritableBlockSource trainingData = newTrainingSource(data.numFeatures());
+        for (int i = 0; i < data.numRows(); i++) {
+            trainingData.add(data.getRow(i), data.getLabel(i));
+        }
+        train(trainingData);
+        Metrics.stopTimer(Metrics.FOLD_TRAINING_TIME, trainingStart);
+    }
+
+    /**
+     * Trains from any block source, e.g. utils.CsvBlockSource or utils.BinaryBlockSource for
+     * data larger than the heap. Only one block is held in memory at a time.
+     */
+    public void buildClassifier(BlockSource data) throws Exception {
+        long trainingStart = Metrics.startTimer();
+        train(data);
+        Metrics.stopTimer(Metrics.FOLD_TRAINING_TIME, trainingStart);
+    }
+
+    private WritableBlockSource newTrainingSource(int numFeatures) {
+        return offHeap ? new OffHeapBlockSource(numFeatures, blockSize) : new InMemoryBlockSource(numFeatures, blockSize);
+    }
+
+    private void train(BlockSource trainingData) {
+        // Initialize population, seeding it from the previous run when warm-starting
+        long runSeed = RandomStreams.deriveSeed(seed, trainingRuns++);
+        int maxGenerations = generations;
+        int firstGeneration = 0;
         double bestFitness = Double.NEGATIVE_INFINITY;
         int noImprovementCount = 0;
         int actualGenerations = 0;
+        DataInputStream checkpoint = openCheckpoint(trainingData, runSeed);
+        if (checkpoint != null) {
+            try (DataInputStream in = checkpoint) {
+                maxGenerations = in.readInt();
+                firstGeneration = in.readInt();
+                bestFitness = in.readDouble();
+                noImprovementCount = in.readInt();
+                actualGenerations = in.readInt();
+                population = Population.readState(trainingData, runSeed, in);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read checkpoint " + checkpointFile, e);
+            }
+            configurePopulation();
+            System.out.println("[GP] Resuming from checkpoint " + checkpointFile + " at generation " + firstGeneration + ".");
+        } else if (warmStart && population != null) {
+            int seedCount = Math.max(1, (int) Math.round(populationSize * warmStartFraction));
+            List<Individual> seeds = population.getTopIndividuals(seedCount);
+            population = new Population(populationSize, trainingData, runSeed, seeds, functionSet);
+            configurePopulation();
+            maxGenerations = warmStartGenerations;
+            System.out.println("[GP] Warm start from " + seeds.size() + " previous individuals.");
+        } else {
+            population = new Population(populationSize, trainingData, runSeed, new ArrayList<>(), functionSet);
+            configurePopulation();
+        }
+
+        // Evolve population
         System.out.println("[GP] Early stopping threshold: " + noImprovementLimit + " generations with no improvement.");
-        for (int gen = 0; gen < generations; gen++) {
+        for (int gen = firstGeneration; gen < maxGenerations; gen++) {
+            long generationStart = Metrics.startTimer();
             population.evolve(mutationRate, crossoverRate);
+            Metrics.stopTimer(Metrics.GENERATION_TIME, generationStart);
             double currentBestFitness = population.getBestIndividual().getFitness();
-            System.out.println("Generation " + gen + ", Best Fitness: " + currentBestFitness);
+            System.out.println("Generation " + gen + ", Best Fitness: " + currentBestFitness
+                + (racing ? ", racing saved " + population.getLastRacingRowsSaved() + " row evaluations ("
+                    + population.getLastRacedIndividuals() + " stopped early)" : "")
+                + (duplicateStrategy != null ? ", " + population.getLastUniquePrograms() + " unique programs ("
+                    + population.getLastDuplicates() + " duplicates " + (duplicateStrategy == Population.DuplicateStrategy.REPLACE ? "replaced)" : "skipped)") : ""));
             actualGenerations++;
             if (currentBestFitness > bestFitness) {
                 bestFitness = currentBestFitness;
@@ -75,10 +343,217 @@ public class GPClassifier extends AbstractClassifier {
                 System.out.println("[GP] Stopping early at generation " + gen + " due to no improvement for " + noImprovementLimit + " generations.");
                 break;
             }
+            if (checkpointFile != null && checkpointInterval > 0 && (gen + 1) % checkpointInterval == 0 && gen + 1 < maxGenerations) {
+                saveCheckpoint(trainingData, runSeed, maxGenerations, gen + 1, bestFitness, noImprovementCount, actualGenerations);
+            }
         }
-        System.out.println("[GP] Training completed after " + actualGenerations + " generations (max allowed: " + generations + ").");
+        finishCheckpoints();
+        System.out.println("[GP] Training completed after " + actualGenerations + " generations (max allowed: " + maxGenerations + ").");
         // Store best individual
         bestIndividual = population.getBestIndividual();
+        if (multiObjective) {
+            bestIndividual = selectFromParetoFront();
+        }
+        population.shutdown();
+        calibration = calibrate(trainingData, runSeed);
+        System.out.println("[GP] Calibration: " + calibration);
+        if (population.getSemanticCache() != null) {
+            System.out.println("[GP] Semantic cache: " + population.getSemanticCache().getHits() + " hits, "
+                + population.getSemanticCache().getMisses() + " misses, "
+                + population.getSemanticCache().getUsedBytes() / 1024 + " KB in use.");
+        }
+        if (subsetStrategy != null) {
+            reportSubsetFitness();
+        } else if (racing) {
+            long saved = population.getRacingRowsSaved();
+            long full = population.getFullRowEvaluations();
+            System.out.println("[GP] Racing saved " + saved + " of " + full + " row evaluations ("
+                + String.format("%.1f", full == 0 ? 0.0 : 100.0 * saved / full) + "%)");
+        }
+    }
+
+    /**
+     * Returns the checkpoint positioned after its header when it belongs to this run, or null
+     * when there is none or it was written for another seed, training run, data set or
+     * configuration.
+     */
+    private DataInputStream openCheckpoint(BlockSource trainingData, long runSeed) {
+        if (checkpointFile == null || checkpointInterval <= 0 || !checkpointFile.isFile()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(checkpointFile.toPath())));
+            if (in.readInt() != CHECKPOINT_MAGIC || in.readInt() != CHECKPOINT_VERSION) {
+                System.out.println("[GP] Ignoring " + checkpointFile + ": not a checkpoint of this version.");
+                return null;
+            }
+            if (in.readLong() != runSeed || in.readLong() != trainingData.numRows() || in.readInt() != trainingData.numFeatures()
+                    || in.readInt() != populationSize || !in.readUTF().equals(String.join(",", functionSet))
+                    || in.readDouble() != mutationRate || in.readDouble() != crossoverRate) {
+                System.out.println("[GP] Ignoring checkpoint " + checkpointFile + ": it belongs to a different run.");
+                return null;
+            }
+            return in;
+        } catch (IOException e) {
+            System.err.println("[GP] Ignoring unreadable checkpoint " + checkpointFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Encodes the loop and population state on the training thread, which is cheap next to a
+     * generation, and hands the bytes to the background writer.
+     */
+    private void saveCheckpoint(BlockSource trainingData, long runSeed, int maxGenerations, int nextGeneration,
+                                double bestFitness, int noImprovementCount, int actualGenerations) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(CHECKPOINT_VERSION);
+            out.writeLong(runSeed);
+            out.writeLong(trainingData.numRows());
+            out.writeInt(trainingData.numFeatures());
+            out.writeInt(populationSize);
+            out.writeUTF(String.join(",", functionSet));
+            out.writeDouble(mutationRate);
+            out.writeDouble(crossoverRate);
+            out.writeInt(maxGenerations);
+            out.writeInt(nextGeneration);
+            out.writeDouble(bestFitness);
+            out.writeInt(noImprovementCount);
+            out.writeInt(actualGenerations);
+            population.writeState(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (checkpointWriter == null) {
+            checkpointWriter = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "gp-checkpoint");
+                thread.setDaemon(true);
+                return thread;
+            });
+            pendingCheckpoint = new AtomicReference<>();
+        }
+        // If a write is already queued it will pick up these newer bytes instead
+        if (pendingCheckpoint.getAndSet(bytes.toByteArray()) == null) {
+            checkpointWriter.execute(this::writePendingCheckpoint);
+        }
+    }
+
+    // Writes to a temporary file and renames it, so a crash never leaves a partial checkpoint
+    private void writePendingCheckpoint() {
+        byte[] bytes = pendingCheckpoint.getAndSet(null);
+        if (bytes == null) {
+            return;
+        }
+        long start = Metrics.startTimer();
+        File temp = new File(checkpointFile.getPath() + ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                out.write(bytes);
+                out.getFD().sync();
+            }
+            Files.move(temp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("[GP] Could not write checkpoint " + checkpointFile + ": " + e.getMessage());
+        }
+        Metrics.stopTimer(Metrics.CHECKPOINT_WRITE_TIME, start);
+    }
+
+    // Waits for outstanding writes, then removes the checkpoint of the finished run
+    private void finishCheckpoints() {
+        if (checkpointWriter != null) {
+            checkpointWriter.shutdown();
+            try {
+                checkpointWriter.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            checkpointWriter = null;
+        }
+        if (checkpointFile != null && checkpointInterval > 0) {
+            checkpointFile.delete();
+        }
+    }
+
+    // Smallest program on the final Pareto front within the accuracy tolerance of the best
+    private Individual selectFromParetoFront() {
+        paretoFront = population.getParetoFront();
+        double bestFitness = population.getBestIndividual().getFitness();
+        Individual chosen = null;
+        for (Individual individual : paretoFront) {
+            System.out.println("[GP] Pareto front: " + individual.nodeCount() + " nodes, fitness " + individual.getFitness());
+            if (chosen == null && individual.getFitness() >= bestFitness - accuracyTolerance) {
+                chosen = individual;
+            }
+        }
+        System.out.println("[GP] Selected " + chosen.nodeCount() + " node program with fitness " + chosen.getFitness()
+            + " (tolerance " + accuracyTolerance + ")");
+        return chosen;
+    }
+
+    // Non-dominated (fitness, size) programs from the last multi-objective run, smallest first
+    public List<Individual> getParetoFront() {
+        return paretoFront;
+    }
+
+    // A deserialized model has no population to warm-start from and an empty Pareto front
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        paretoFront = new ArrayList<>();
+    }
+
+    /**
+     * Fits the calibration to the best tree's outputs. Streams the training data through a
+     * cursor and keeps a uniform reservoir sample of at most MAX_CALIBRATION_ROWS outputs, so
+     * memory stays bounded for streamed and off-heap sources; smaller data is used in full.
+     */
+    private Calibration calibrate(BlockSource trainingData, long runSeed) {
+        int capacity = (int) Math.min(trainingData.numRows(), MAX_CALIBRATION_ROWS);
+        double[] raw = new double[capacity];
+        double[] labels = new double[capacity];
+        double[] out = new double[trainingData.blockSize()];
+        SplittableRandom random = new SplittableRandom(runSeed);
+        long seen = 0;
+        try (BlockCursor cursor = trainingData.openCursor()) {
+            DataBlock block;
+            while ((block = cursor.next()) != null) {
+                bestIndividual.evaluate(block, out);
+                for (int i = 0; i < block.size; i++, seen++) {
+                    long slot = seen < capacity ? seen : random.nextLong(seen + 1);
+                    if (slot < capacity) {
+                        raw[(int) slot] = out[i];
+                        labels[(int) slot] = block.labels[i];
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Calibration.fit(raw, labels, (int) Math.min(seen, capacity));
+    }
+
+    private void configurePopulation() {
+        population.setThreads(threads);
+        population.setSemanticCache(semanticCacheBytes);
+        population.setSampleFraction(sampleFraction);
+        population.setMultiObjective(multiObjective);
+        population.setRacing(racing, racingQuantile, racingDelta);
+        population.setDeduplication(duplicateStrategy);
+        if (subsetStrategy != null) {
+            population.setSubsetFitness(subsetStrategy, subsetSize, subsetEliteSize);
+        }
+    }
+
+    // Compares the subset-driven result with what full evaluation of the final population finds
+    private void reportSubsetFitness() {
+        long performed = population.getRowEvaluations();
+        long full = population.getFullRowEvaluations();
+        System.out.println("[GP] Subset fitness (" + subsetStrategy + ", " + subsetSize + " rows): best subset fitness "
+            + population.getLastSubsetBestFitness() + ", re-scored on full data " + bestIndividual.getFitness()
+            + ", best of final population on full data " + population.bestFullFitness());
+        System.out.println("[GP] Row evaluations: " + performed + " of " + full + " for full evaluation ("
+            + String.format("%.1f", full == 0 ? 0.0 : 100.0 * performed / full) + "%)");
     }
 
     @Override
@@ -86,21 +561,111 @@ public class GPClassifier extends AbstractClassifier {
         if (bestIndividual == null) {
             throw new Exception("Classifier has not been built yet");
         }
+        long start = Metrics.startTimer();
+        double prediction = classify(features(instance));
+        Metrics.stopTimer(Metrics.PREDICTION_LATENCY, start);
+        return prediction;
+    }
 
-        double[] features = new double[instance.numAttributes() - 1];
-        for (int i = 0; i < instance.numAttributes() - 1; i++) {
+    // Copies the features of an instance into this thread's reusable row buffer
+    private static double[] features(Instance instance) {
+        int numFeatures = instance.numAttributes() - 1;
+        double[][] holder = featureBuffer.get();
+        if (holder[0].length != numFeatures) {
+            holder[0] = new double[numFeatures];
+        }
+        double[] features = holder[0];
+        for (int i = 0; i < numFeatures; i++) {
             features[i] = instance.value(i);
         }
+        return features;
+    }
+
+    /**
+     * Classifies a single row of primitive features (e.g. from utils.FeaturePipeline.update).
+     */
+    public double classify(double[] features) throws Exception {
+        if (bestIndividual == null) {
+            throw new Exception("Classifier has not been built yet");
+        }
+        return calibration.classify(bestIndividual.evaluate(features));
+    }
 
-        Individual.DataPoint point = new Individual.DataPoint(features, 0);
-        double prediction = bestIndividual.evaluate(point);
-        return prediction > 0.5 ? 1.0 : 0.0;
+    /**
+     * Calibrated probability that a row of primitive features belongs to class 1.
+     */
+    public double probability(double[] features) throws Exception {
+        if (bestIndividual == null) {
+            throw new Exception("Classifier has not been built yet");
+        }
+        return calibration.probability(bestIndividual.evaluate(features));
     }
 
+    /**
+     * Returns calibrated class probabilities. Weka's Evaluation predicts the most probable
+     * class from these, while classifyInstance applies the optimized threshold.
+     */
     @Override
     public double[] distributionForInstance(Instance instance) throws Exception {
-        double pred = classifyInstance(instance);
-        return new double[] {1.0 - pred, pred};
+        if (bestIndividual == null) {
+            throw new Exception("Classifier has not been built yet");
+        }
+        long start = Metrics.startTimer();
+        double p = probability(features(instance));
+        Metrics.stopTimer(Metrics.PREDICTION_LATENCY, start);
+        return new double[] {1.0 - p, p};
+    }
+
+    /**
+     * Scores a whole block: writes calibrated probabilities for its rows into out. Costs one
+     * tree evaluation per block plus one exp() per row.
+     */
+    public void probabilities(DataBlock block, double[] out) throws Exception {
+        if (bestIndividual == null) {
+            throw new Exception("Classifier has not been built yet");
+        }
+        bestIndividual.evaluate(block, out);
+        calibration.probabilities(out, out, block.size);
+    }
+
+    @Override
+    public double[] classifyBatch(Instances data) throws Exception {
+        return classifyBatch(BatchClassifier.toColumns(data), data.numInstances());
+    }
+
+    @Override
+    public double[] distributionBatch(Instances data) throws Exception {
+        return distributionBatch(BatchClassifier.toColumns(data), data.numInstances());
+    }
+
+    @Override
+    public double[] classifyBatch(double[][] columns, int numRows) throws Exception {
+        double[] predictions = distributionBatch(columns, numRows);
+        for (int i = 0; i < numRows; i++) {
+            predictions[i] = predictions[i] > calibration.getThreshold() ? 1.0 : 0.0;
+        }
+        return predictions;
+    }
+
+    @Override
+    public double[] distributionBatch(double[][] columns, int numRows) throws Exception {
+        double[] out = new double[numRows];
+        probabilities(new DataBlock(columns, new double[numRows], numRows), out);
+        return out;
+    }
+
+    @Override
+    public double decisionThreshold() {
+        return calibration == null ? 0.5 : calibration.getThreshold();
+    }
+
+    public Calibration getCalibration() {
+        return calibration;
+    }
+
+    // The program the model classifies with (for multi-objective runs, the one chosen from the front)
+    public Individual getBestIndividual() {
+        return bestIndividual;
     }
 
     @Override
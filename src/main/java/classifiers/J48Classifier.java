@@ -2,15 +2,21 @@ package classifiers;
 
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.trees.J48;
+import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.Utils;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
+import utils.Metrics;
 
-public class J48Classifier extends AbstractClassifier {
+public class J48Classifier extends AbstractClassifier implements BatchClassifier {
+    private static final long serialVersionUID = 1L;
     private J48 j48;
     private boolean isTrained;
     private long seed;
+    // Attribute layout of the training data, used to wrap primitive rows as instances
+    private Instances header;
 
     public J48Classifier() {
         j48 = new J48();
@@ -30,12 +36,29 @@ public class J48Classifier extends AbstractClassifier {
         }
     }
 
+    /**
+     * Set the pruning confidence factor (default 0.1; smaller prunes more)
+     */
+    public void setConfidenceFactor(float confidenceFactor) {
+        j48.setConfidenceFactor(confidenceFactor);
+    }
+
+    /**
+     * Set the minimum number of instances per leaf (default 10)
+     */
+    public void setMinNumObj(int minNumObj) {
+        j48.setMinNumObj(minNumObj);
+    }
+
     @Override
     public void buildClassifier(Instances data) throws Exception {
         if (data.classIndex() != data.numAttributes() - 1) {
             throw new Exception("Class attribute must be the last attribute");
         }
+        long trainingStart = Metrics.startTimer();
         j48.buildClassifier(data);
+        header = new Instances(data, 0);
+        Metrics.stopTimer(Metrics.FOLD_TRAINING_TIME, trainingStart);
         isTrained = true;
     }
 
@@ -44,7 +67,10 @@ public class J48Classifier extends AbstractClassifier {
         if (!isTrained) {
             throw new IllegalStateException("Classifier must be trained before classification");
         }
-        return j48.classifyInstance(instance);
+        long start = Metrics.startTimer();
+        double prediction = j48.classifyInstance(instance);
+        Metrics.stopTimer(Metrics.PREDICTION_LATENCY, start);
+        return prediction;
     }
 
     @Override
@@ -55,6 +81,57 @@ public class J48Classifier extends AbstractClassifier {
         return j48.distributionForInstance(instance);
     }
 
+    @Override
+    public double[] classifyBatch(Instances data) throws Exception {
+        if (!isTrained) {
+            throw new IllegalStateException("Classifier must be trained before classification");
+        }
+        double[] predictions = new double[data.numInstances()];
+        for (int i = 0; i < predictions.length; i++) {
+            predictions[i] = j48.classifyInstance(data.instance(i));
+        }
+        return predictions;
+    }
+
+    @Override
+    public double[] distributionBatch(Instances data) throws Exception {
+        if (!isTrained) {
+            throw new IllegalStateException("Classifier must be trained before classification");
+        }
+        double[] probabilities = new double[data.numInstances()];
+        for (int i = 0; i < probabilities.length; i++) {
+            probabilities[i] = j48.distributionForInstance(data.instance(i))[1];
+        }
+        return probabilities;
+    }
+
+    @Override
+    public double[] classifyBatch(double[][] columns, int numRows) throws Exception {
+        return classifyBatch(toInstances(columns, numRows));
+    }
+
+    @Override
+    public double[] distributionBatch(double[][] columns, int numRows) throws Exception {
+        return distributionBatch(toInstances(columns, numRows));
+    }
+
+    // J48 walks the tree per instance, so primitive rows are wrapped in the training layout
+    private Instances toInstances(double[][] columns, int numRows) {
+        if (!isTrained) {
+            throw new IllegalStateException("Classifier must be trained before classification");
+        }
+        Instances data = new Instances(header, numRows);
+        for (int i = 0; i < numRows; i++) {
+            double[] values = new double[header.numAttributes()];
+            for (int j = 0; j < columns.length; j++) {
+                values[j] = columns[j][i];
+            }
+            values[header.classIndex()] = Utils.missingValue();
+            data.add(new DenseInstance(1.0, values));
+        }
+        return data;
+    }
+
     @Override
     public Capabilities getCapabilities() {
         Capabilities result = new Capabilities(this);
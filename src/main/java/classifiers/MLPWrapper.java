@@ -7,28 +7,105 @@ import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
 import java.io.File;
 import java.io.FileWriter;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.ref.Cleaner;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import utils.Dataset;
+import utils.Metrics;
+import utils.SubprocessRunner;
 
-public class MLPWrapper extends AbstractClassifier {
-    private String modelPath;
-    private String tempDataPath;
+public class MLPWrapper extends AbstractClassifier implements WarmStartClassifier, BatchClassifier {
+    private static final long serialVersionUID = 1L;
+    // Local paths; a serialized model carries the pickle itself (see writeObject)
+    private transient String modelPath;
+    private transient String tempDataPath;
     private long seed;
-    private String pythonScriptPath;
+    private transient String pythonScriptPath;
     private boolean isTrained = false;
-    private double[] cachedPredictions = null;
-    private int predictionIndex = 0;
+    private boolean warmStart = false;
+    private int[] hiddenLayerSizes = {64, 32};
+    private double alpha = 0.001;
+    // Python runs still alive after this long are killed (0 = no limit)
+    private long timeoutSeconds = 1800;
+    // Numbers temp files so concurrent instances (e.g. parallel tuning trials) never share one
+    private static final AtomicLong nextTempId = new AtomicLong();
+    // "python" or "python3", resolved once per JVM
+    private static volatile String pythonCommand;
+    // Deletes the model file an instance owns once it is released or becomes unreachable
+    private static final Cleaner CLEANER = Cleaner.create();
+    private transient Cleaner.Cleanable modelFile;
 
     public void setSeed(long seed) {
         this.seed = seed;
     }
 
+    /**
+     * Set the number of units in each hidden layer (default 64, 32)
+     */
+    public void setHiddenLayerSizes(int... hiddenLayerSizes) {
+        this.hiddenLayerSizes = hiddenLayerSizes.clone();
+    }
+
+    /**
+     * Set the L2 regularization strength (default 0.001)
+     */
+    public void setAlpha(double alpha) {
+        this.alpha = alpha;
+    }
+
+    /**
+     * Set how long one Python training or prediction run may take before it is killed
+     * (0 = no limit, default 30 minutes)
+     */
+    public void setTimeoutSeconds(long timeoutSeconds) {
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    private Duration timeout() {
+        return Duration.ofSeconds(timeoutSeconds);
+    }
+
+    // Prefers python, falling back to python3 when python is missing or fails
+    private static String pythonCommand() throws InterruptedException {
+        String command = pythonCommand;
+        if (command == null) {
+            command = "python3";
+            try {
+                if (SubprocessRunner.run(List.of("python", "--version"), Duration.ofSeconds(30), null).exitCode == 0) {
+                    command = "python";
+                }
+            } catch (IOException | TimeoutException e) {
+                System.out.println("Trying fallback to python3");
+            }
+            pythonCommand = command;
+        }
+        return command;
+    }
+
+    // A temp file name unique to this process and call
+    private static String tempPath(String name, String extension) {
+        return "temp/" + name + "_" + ProcessHandle.current().pid() + "_" + nextTempId.incrementAndGet() + extension;
+    }
+
+    @Override
+    public void setWarmStart(boolean warmStart) {
+        this.warmStart = warmStart;
+    }
+
     @Override
     public void buildClassifier(Instances data) throws Exception {
         if (data.classIndex() != data.numAttributes() - 1) {
             throw new Exception("Class attribute must be the last attribute");
         }
+        long trainingStart = Metrics.startTimer();
 
         // Create temporary directory if it doesn't exist
         File tempDir = new File("temp");
@@ -37,7 +114,7 @@ public class MLPWrapper extends AbstractClassifier {
         }
 
         // Save data to temporary CSV file
-        tempDataPath = "temp/temp_data.csv";
+        tempDataPath = tempPath("temp_data", ".csv");
         try (FileWriter writer = new FileWriter(tempDataPath)) {
             // Write header
             for (int i = 0; i < data.numAttributes() - 1; i++) {
@@ -54,22 +131,30 @@ public class MLPWrapper extends AbstractClassifier {
                 writer.write(instance.classValue() + "\n");
             }
         }
+        Metrics.add(Metrics.TEMP_BYTES_WRITTEN, new File(tempDataPath).length());
+        trainOnTempData(trainingStart);
+    }
 
-        // Set model path
-        modelPath = "temp/mlp_model.pkl";
-
-        // Get Python executable - try python or python3
-        String pythonCmd = "python";
-        try {
-            ProcessBuilder pbTest = new ProcessBuilder(pythonCmd, "--version");
-            Process pTest = pbTest.start();
-            if (pTest.waitFor() != 0) {
-                pythonCmd = "python3";
-            }
-        } catch (Exception e) {
-            System.out.println("Trying fallback to python3");
-            pythonCmd = "python3";
+    /**
+     * Trains directly from primitive feature rows (e.g. the output of utils.FeaturePipeline)
+     * without building Weka Instances.
+     */
+    public void buildClassifier(Dataset data) throws Exception {
+        long trainingStart = Metrics.startTimer();
+        File tempDir = new File("temp");
+        if (!tempDir.exists()) {
+            tempDir.mkdir();
         }
+        tempDataPath = tempPath("temp_data", ".csv");
+        writeCsv(tempDataPath, data, true);
+        trainOnTempData(trainingStart);
+    }
+
+    private void trainOnTempData(long trainingStart) throws Exception {
+        // Always train into a new file, continuing from the previous model's weights when
+        // warm-starting; the previous model is kept until the new one has trained successfully
+        boolean continueTraining = warmStart && isTrained && modelPath != null && new File(modelPath).exists();
+        String targetPath = tempPath("mlp_model", ".pkl");
 
         // Find the Python script using multiple possible locations
         File scriptFile = findPythonScript();
@@ -80,32 +165,96 @@ public class MLPWrapper extends AbstractClassifier {
         pythonScriptPath = scriptFile.getAbsolutePath();
         System.out.println("Using Python script at: " + pythonScriptPath);
 
-        // Run Python script with seed
-        ProcessBuilder pb = new ProcessBuilder(pythonCmd, pythonScriptPath, tempDataPath, modelPath, String.valueOf(seed));
-        pb.redirectErrorStream(true); // Merge error stream with input stream
-        System.out.println("Running command: " + String.join(" ", pb.command()));
-        
-        Process p = pb.start();
-
-        // Read output
-        BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
-        String line;
-        while ((line = reader.readLine()) != null) {
-            System.out.println("Python: " + line);
+        // Run Python script with seed, continuing from the previous weights when warm-starting
+        List<String> command = new ArrayList<>(List.of(pythonCommand(), pythonScriptPath, tempDataPath, targetPath, String.valueOf(seed),
+            "--hidden", hiddenLayers(), "--alpha", String.valueOf(alpha)));
+        if (continueTraining) {
+            command.add("--warm-start");
+            command.add(modelPath);
         }
+        System.out.println("Running command: " + String.join(" ", command));
 
-        // Wait for process to complete
-        int exitCode = p.waitFor();
+        // Output is echoed as it arrives; the process is killed on timeout or interrupt
+        int exitCode = -1;
+        try {
+            exitCode = SubprocessRunner.run(command, timeout(), line -> System.out.println("Python: " + line)).exitCode;
+        } finally {
+            new File(tempDataPath).delete();
+            if (exitCode != 0) {
+                new File(targetPath).delete();
+            }
+        }
         if (exitCode != 0) {
             throw new Exception("Python script failed with exit code " + exitCode);
         }
 
+        ownModelFile(targetPath);
         isTrained = true;
-        // Clear prediction cache on new training
-        cachedPredictions = null;
-        predictionIndex = 0;
+        Metrics.stopTimer(Metrics.FOLD_TRAINING_TIME, trainingStart);
     }
     
+    // Makes path the model file, deleting the one it replaces
+    private void ownModelFile(String path) {
+        releaseModelFile();
+        modelPath = path;
+        modelFile = CLEANER.register(this, () -> new File(path).delete());
+    }
+
+    private void releaseModelFile() {
+        if (modelFile != null) {
+            modelFile.clean();
+            modelFile = null;
+        }
+    }
+
+    /**
+     * Deletes the trained model file now rather than when this classifier is garbage
+     * collected. The classifier has to be trained again before it can predict.
+     */
+    public void release() {
+        releaseModelFile();
+        isTrained = false;
+    }
+
+    // Embeds the pickled network so a saved model does not depend on a file in temp/
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        if (!isTrained) {
+            out.writeInt(-1);
+            return;
+        }
+        if (modelPath == null || !new File(modelPath).exists()) {
+            throw new IOException("MLP model file " + modelPath + " is missing");
+        }
+        byte[] model = Files.readAllBytes(Paths.get(modelPath));
+        out.writeInt(model.length);
+        out.write(model);
+    }
+
+    // Writes the embedded network to a new temp file that this copy owns
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int length = in.readInt();
+        if (length < 0) {
+            isTrained = false;
+            return;
+        }
+        byte[] model = new byte[length];
+        in.readFully(model);
+        new File("temp").mkdirs();
+        String path = tempPath("mlp_model", ".pkl");
+        Files.write(Paths.get(path), model);
+        ownModelFile(path);
+    }
+
+    private String hiddenLayers() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < hiddenLayerSizes.length; i++) {
+            sb.append(i > 0 ? "," : "").append(hiddenLayerSizes[i]);
+        }
+        return sb.toString();
+    }
+
     private File findPythonScript() {
         // Try multiple possible locations for the script
         String[] possiblePaths = {
@@ -133,35 +282,82 @@ public class MLPWrapper extends AbstractClassifier {
         return null;
     }
 
-    public void batchPredict(Instances instances) throws Exception {
-        // Save all instances to a temp CSV
-        String tempBatchPath = "temp/temp_batch.csv";
-        try (java.io.PrintWriter writer = new java.io.PrintWriter(new java.io.FileWriter(tempBatchPath))) {
-            // Write header
-            for (int i = 0; i < instances.numAttributes() - 1; i++) {
+    // Writes feature rows to CSV in the layout expected by mlp_classifier.py
+    private static void writeCsv(String path, Dataset data, boolean withLabels) throws Exception {
+        try (java.io.PrintWriter writer = new java.io.PrintWriter(new java.io.BufferedWriter(new FileWriter(path)))) {
+            for (int i = 0; i < data.numFeatures(); i++) {
                 writer.write("feature" + i + ",");
             }
             writer.write("class\n");
-            // Write data
-            for (int i = 0; i < instances.numInstances(); i++) {
-                Instance instance = instances.instance(i);
-                for (int j = 0; j < instances.numAttributes() - 1; j++) {
-                    writer.write(instance.value(j) + ",");
+            for (int i = 0; i < data.numRows(); i++) {
+                double[] row = data.getRow(i);
+                for (double value : row) {
+                    writer.write(value + ",");
                 }
-                writer.write("0\n"); // Dummy class value
+                writer.write((withLabels ? data.getLabel(i) : 0) + "\n");
             }
         }
-        // Run prediction command
-        String pythonCmd = "python";
-        try {
-            ProcessBuilder pbTest = new ProcessBuilder(pythonCmd, "--version");
-            Process pTest = pbTest.start();
-            if (pTest.waitFor() != 0) {
-                pythonCmd = "python3";
+        Metrics.add(Metrics.TEMP_BYTES_WRITTEN, new File(path).length());
+    }
+
+    /**
+     * Predicts primitive feature rows in one Python call; predictions are returned in row order.
+     */
+    public double[] batchPredict(Dataset data) throws Exception {
+        if (!isTrained) {
+            throw new IllegalStateException("Classifier must be trained before classification");
+        }
+        String tempBatchPath = tempPath("temp_batch", ".csv");
+        writeCsv(tempBatchPath, data, false);
+        return runPrediction(tempBatchPath, false, data.numRows());
+    }
+
+    @Override
+    public double[] classifyBatch(Instances data) throws Exception {
+        return predictBatch(BatchClassifier.toColumns(data), data.numInstances(), false);
+    }
+
+    @Override
+    public double[] distributionBatch(Instances data) throws Exception {
+        return predictBatch(BatchClassifier.toColumns(data), data.numInstances(), true);
+    }
+
+    @Override
+    public double[] classifyBatch(double[][] columns, int numRows) throws Exception {
+        return predictBatch(columns, numRows, false);
+    }
+
+    @Override
+    public double[] distributionBatch(double[][] columns, int numRows) throws Exception {
+        return predictBatch(columns, numRows, true);
+    }
+
+    // Writes the rows to a temp CSV and scores them all in one Python call
+    private double[] predictBatch(double[][] columns, int numRows, boolean probabilities) throws Exception {
+        if (!isTrained) {
+            throw new IllegalStateException("Classifier must be trained before classification");
+        }
+        new File("temp").mkdirs();
+        String tempBatchPath = tempPath("temp_batch", ".csv");
+        try (java.io.PrintWriter writer = new java.io.PrintWriter(new java.io.BufferedWriter(new FileWriter(tempBatchPath)))) {
+            // Write header
+            for (int j = 0; j < columns.length; j++) {
+                writer.write("feature" + j + ",");
+            }
+            writer.write("class\n");
+            // Write data
+            for (int i = 0; i < numRows; i++) {
+                for (double[] column : columns) {
+                    writer.write(column[i] + ",");
+                }
+                writer.write("0\n"); // Dummy class value
             }
-        } catch (Exception e) {
-            pythonCmd = "python3";
         }
+        Metrics.add(Metrics.TEMP_BYTES_WRITTEN, new File(tempBatchPath).length());
+        return runPrediction(tempBatchPath, probabilities, numRows);
+    }
+
+    private double[] runPrediction(String tempBatchPath, boolean probabilities, int expectedRows) throws Exception {
         if (pythonScriptPath == null || pythonScriptPath.isEmpty()) {
             File scriptFile = findPythonScript();
             if (scriptFile == null || !scriptFile.exists()) {
@@ -169,20 +365,31 @@ public class MLPWrapper extends AbstractClassifier {
             }
             pythonScriptPath = scriptFile.getAbsolutePath();
         }
-        ProcessBuilder pb = new ProcessBuilder(pythonCmd, pythonScriptPath, tempBatchPath, modelPath, String.valueOf(seed), "--predict");
-        pb.redirectErrorStream(true);
-        Process p = pb.start();
-        java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.InputStreamReader(p.getInputStream()));
-        String line;
-        java.util.List<Double> preds = new java.util.ArrayList<>();
-        while ((line = reader.readLine()) != null) {
-            if (line.trim().matches("\\d+(\\.\\d+)?")) {
+        List<String> command = new ArrayList<>(List.of(pythonCommand(), pythonScriptPath, tempBatchPath, modelPath, String.valueOf(seed), "--predict"));
+        if (probabilities) {
+            command.add("--proba");
+        }
+        SubprocessRunner.Result result;
+        try {
+            result = SubprocessRunner.run(command, timeout(), null);
+        } finally {
+            new File(tempBatchPath).delete();
+        }
+        List<Double> preds = new ArrayList<>();
+        for (String line : result.lines) {
+            if (line.trim().matches("-?\\d+(\\.\\d+)?([eE][-+]?\\d+)?")) {
                 preds.add(Double.parseDouble(line.trim()));
             }
         }
-        p.waitFor();
-        cachedPredictions = preds.stream().mapToDouble(Double::doubleValue).toArray();
-        predictionIndex = 0;
+        int exitCode = result.exitCode;
+        if (exitCode != 0) {
+            throw new Exception("Python prediction failed with exit code " + exitCode);
+        }
+        // A short answer would otherwise shift every later prediction onto the wrong row
+        if (preds.size() != expectedRows) {
+            throw new Exception("Python returned " + preds.size() + " predictions for " + expectedRows + " rows");
+        }
+        return preds.stream().mapToDouble(Double::doubleValue).toArray();
     }
 
     @Override
@@ -190,19 +397,24 @@ public class MLPWrapper extends AbstractClassifier {
         if (!isTrained) {
             throw new IllegalStateException("Classifier must be trained before classification");
         }
-        if (cachedPredictions == null || predictionIndex >= cachedPredictions.length) {
-            // Create a single-instance dataset for prediction
-            Instances singleInstance = new Instances(instance.dataset(), 0);
-            singleInstance.add(instance);
-            batchPredict(singleInstance);
-        }
-        return cachedPredictions[predictionIndex++];
+        long start = Metrics.startTimer();
+        // Scoring rows one at a time costs a Python call each; prefer classifyBatch
+        Instances singleInstance = new Instances(instance.dataset(), 0);
+        singleInstance.add(instance);
+        double prediction = classifyBatch(singleInstance)[0];
+        Metrics.stopTimer(Metrics.PREDICTION_LATENCY, start);
+        return prediction;
     }
 
     @Override
     public double[] distributionForInstance(Instance instance) throws Exception {
-        double pred = classifyInstance(instance);
-        return new double[] {1.0 - pred, pred};
+        if (!isTrained) {
+            throw new IllegalStateException("Classifier must be trained before classification");
+        }
+        Instances singleInstance = new Instances(instance.dataset(), 0);
+        singleInstance.add(instance);
+        double p = distributionBatch(singleInstance)[0];
+        return new double[] {1.0 - p, p};
     }
 
     @Override
@@ -217,6 +429,6 @@ public class MLPWrapper extends AbstractClassifier {
     }
 
     public String getModelStructure() {
-        return "MLP Classifier (Python)";
+        return "MLP Classifier (Python), hidden layers " + hiddenLayers() + ", alpha " + alpha;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,9 @@
+package classifiers;
+
+/**
+ * A classifier that can continue training from the state of its previous buildClassifier call
+ * instead of starting from scratch (used by walk-forward validation).
+ */
+public interface WarmStartClassifier {
+    void setWarmStart(boolean warmStart);
+}
@@ -0,0 +1,45 @@
+package com.stockclassifier;
+
+import classifiers.GPClassifier;
+import weka.core.Instance;
+import weka.core.Instances;
+import utils.AllocationProbe;
+
+/**
+ * Trains a GP model and reports the heap bytes allocated per prediction on each scoring path.
+ * Usage: java com.stockclassifier.AllocationReport [data/BTC_train.csv] [seed]
+ */
+public class AllocationReport {
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 100000;
+
+    public static void main(String[] args) throws Exception {
+        if (!AllocationProbe.isSupported()) {
+            System.out.println("This JVM does not report per-thread allocation.");
+            return;
+        }
+        Instances data = StockClassifier.loadDataset(args.length > 0 ? args[0] : "data/BTC_train.csv");
+        GPClassifier gp = new GPClassifier();
+        gp.setSeed(args.length > 1 ? Long.parseLong(args[1]) : 1L);
+        gp.setThreads(1);
+        gp.buildClassifier(data);
+
+        int n = data.numInstances();
+        double[] row = new double[data.numAttributes() - 1];
+        int[] next = {0};
+        report("classifyInstance", () -> gp.classifyInstance(data.instance(next[0]++ % n)));
+        report("distributionForInstance", () -> gp.distributionForInstance(data.instance(next[0]++ % n)));
+        report("classify(double[])", () -> {
+            Instance instance = data.instance(next[0]++ % n);
+            for (int j = 0; j < row.length; j++) {
+                row[j] = instance.value(j);
+            }
+            gp.classify(row);
+        });
+    }
+
+    private static void report(String name, AllocationProbe.Call call) throws Exception {
+        double bytes = AllocationProbe.bytesPerCall(WARMUP, ITERATIONS, call);
+        System.out.println(String.format("%-26s %8.1f bytes/call", name, bytes));
+    }
+}
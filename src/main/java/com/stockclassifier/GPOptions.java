@@ -0,0 +1,145 @@
+package com.stockclassifier;
+
+import classifiers.GPClassifier;
+import java.io.File;
+import java.util.Locale;
+import main.java.models.Population;
+
+/**
+ * GP settings given on the command line, shared by the entry points that train GP
+ * (StockClassifier and ScoreCli train). Options are parsed before training starts, so a typo
+ * is reported before any prompt or data loading.
+ */
+final class GPOptions {
+    static final String USAGE = "[--checkpoint file [--checkpoint-every 10]] [--dedup replace|skip] [--racing [quantile]] [--block-size rows] [--multi-objective [tolerance]]";
+
+    private File checkpointFile;
+    private int checkpointInterval = 10;
+    private Population.DuplicateStrategy duplicateStrategy;
+    // Parent fitness quantile offspring are raced against, or NaN when racing is off
+    private double racingQuantile = Double.NaN;
+    private int blockSize = 0;
+    // Accuracy tolerance for picking a smaller program off the Pareto front, or NaN when off
+    private double accuracyTolerance = Double.NaN;
+
+    /**
+     * Parses the GP option at args[i] and its value. Returns the index after the option, or i
+     * when args[i] is not a GP option.
+     */
+    int parse(String[] args, int i) {
+        switch (args[i]) {
+            case "--checkpoint":
+                checkpointFile = new File(value(args, i));
+                return i + 2;
+            case "--checkpoint-every":
+                checkpointInterval = Integer.parseInt(value(args, i));
+                if (checkpointInterval < 1) {
+                    throw new IllegalArgumentException("--checkpoint-every must be at least 1");
+                }
+                return i + 2;
+            case "--dedup":
+                try {
+                    duplicateStrategy = Population.DuplicateStrategy.valueOf(value(args, i).toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("--dedup must be replace or skip");
+                }
+                return i + 2;
+            case "--racing":
+                // The quantile is optional and defaults to the parents' median
+                if (i + 1 < args.length && isNumber(args[i + 1])) {
+                    racingQuantile = Double.parseDouble(args[i + 1]);
+                    if (!(racingQuantile > 0 && racingQuantile < 1)) {
+                        throw new IllegalArgumentException("--racing quantile must be between 0 and 1");
+                    }
+                    return i + 2;
+                }
+                racingQuantile = 0.5;
+                return i + 1;
+            case "--multi-objective":
+                // The tolerance is optional; 0 picks the smallest of the most accurate programs
+                if (i + 1 < args.length && isNumber(args[i + 1])) {
+                    accuracyTolerance = Double.parseDouble(args[i + 1]);
+                    if (!(accuracyTolerance >= 0 && accuracyTolerance < 1)) {
+                        throw new IllegalArgumentException("--multi-objective tolerance must be between 0 and 1");
+                    }
+                    return i + 2;
+                }
+                accuracyTolerance = 0.0;
+                return i + 1;
+            case "--block-size":
+                // Racing checks offspring once per block, so small data sets need small blocks
+                blockSize = Integer.parseInt(value(args, i));
+                if (blockSize < 1) {
+                    throw new IllegalArgumentException("--block-size must be at least 1");
+                }
+                return i + 2;
+            default:
+                return i;
+        }
+    }
+
+    // Parses arguments that must all be GP options
+    static GPOptions parseAll(String[] args) {
+        GPOptions options = new GPOptions();
+        int i = 0;
+        while (i < args.length) {
+            int next = options.parse(args, i);
+            if (next == i) {
+                throw new IllegalArgumentException("Unknown option " + args[i] + " (GP options: " + USAGE + ")");
+            }
+            i = next;
+        }
+        return options;
+    }
+
+    private static String value(String[] args, int i) {
+        if (i + 1 >= args.length) {
+            throw new IllegalArgumentException(args[i] + " needs a value");
+        }
+        return args[i + 1];
+    }
+
+    private static boolean isNumber(String value) {
+        try {
+            Double.parseDouble(value);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    boolean hasCheckpoint() {
+        return checkpointFile != null;
+    }
+
+    // Applies the settings that hold for every training run, so cross-validation copies get them too
+    void applyTo(GPClassifier gp) {
+        if (duplicateStrategy != null) {
+            gp.setDeduplication(duplicateStrategy);
+        }
+        if (blockSize > 0) {
+            gp.setBlockSize(blockSize);
+        }
+        if (!Double.isNaN(accuracyTolerance)) {
+            gp.setMultiObjective(true, accuracyTolerance);
+        }
+        if (!Double.isNaN(racingQuantile)) {
+            gp.setRacing(true, racingQuantile, 0.0);
+        }
+    }
+
+    /**
+     * Applies the checkpoint settings. Only for a single training run at a time: copies of a
+     * classifier (e.g. cross-validation folds) would share the file.
+     */
+    void applyCheckpoint(GPClassifier gp) {
+        if (checkpointFile != null) {
+            File parent = checkpointFile.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            gp.setCheckpoint(checkpointFile, checkpointInterval);
+            System.out.println("[GP] Checkpointing to " + checkpointFile + " every " + checkpointInterval + " generations.");
+        }
+    }
+}
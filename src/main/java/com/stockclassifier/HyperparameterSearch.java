@@ -0,0 +1,413 @@
+package com.stockclassifier;
+
+import classifiers.BatchClassifier;
+import classifiers.GPClassifier;
+import classifiers.J48Classifier;
+import classifiers.MLPWrapper;
+import main.java.models.RandomStreams;
+import org.json.JSONObject;
+import utils.PreprocessingCache;
+import utils.SubprocessRunner;
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Hyperparameter search for the GP, J48 and MLP classifiers.
+ *
+ * Each bracket samples a set of configurations, half at random and half by perturbing the
+ * best one found so far. They are then raced with successive halving. Every configuration is
+ * scored on a small budget (GP generations, or CV folds for J48 and MLP), the best 1/eta move
+ * on to eta times the budget, and so on up to the full budget. Trials run on a thread pool and
+ * every score is appended to a JSON-lines log. Rerunning with the same seed and log skips the
+ * trials already recorded, so an interrupted search resumes where it stopped. A logged score is
+ * only reused for the same classifier type, seed, training data (by content hash), parameters
+ * and budget; entries from other runs in the same log are ignored.
+ *
+ * Usage: java com.stockclassifier.HyperparameterSearch gp|j48|mlp [data/BTC_train.csv]
+ *        [--trials 16] [--brackets 2] [--eta 2] [--threads N] [--seed 1] [--log file]
+ */
+public class HyperparameterSearch {
+    private static final int NUM_FOLDS = 10;
+    // GP is scored with fewer folds; its budget is the number of generations instead
+    private static final int GP_FOLDS = 3;
+    private static final String[] HIDDEN_LAYERS = {"32", "64", "64,32", "128,64"};
+
+    private final String type;
+    // Randomized and stratified once so every trial is scored on the same folds
+    private final Instances data;
+    private final long seed;
+    private final int eta;
+    private final int threads;
+    private final File logFile;
+    // SHA-256 of the training file, so scores on other data in the same log are not reused
+    private final String dataHash;
+    // Scores already in the log, keyed by logKey
+    private final Map<String, Double> logged = new HashMap<>();
+    private final List<Result> results = new ArrayList<>();
+
+    // One configuration scored at one budget
+    public static class Result {
+        public final String id;
+        public final JSONObject params;
+        public final int budget;
+        public final double accuracy;
+
+        Result(String id, JSONObject params, int budget, double accuracy) {
+            this.id = id;
+            this.params = params;
+            this.budget = budget;
+            this.accuracy = accuracy;
+        }
+    }
+
+    public HyperparameterSearch(String type, Instances data, String dataHash, long seed, int eta, int threads, File logFile) throws IOException {
+        if (!type.equals("gp") && !type.equals("j48") && !type.equals("mlp")) {
+            throw new IllegalArgumentException("Unknown classifier type: " + type);
+        }
+        this.type = type;
+        this.data = StockClassifier.PREPROCESSING_CACHE.stratifiedFolds(data, seed, NUM_FOLDS);
+        this.seed = seed;
+        this.eta = Math.max(2, eta);
+        this.threads = Math.max(1, threads);
+        this.logFile = logFile;
+        this.dataHash = dataHash;
+        loadLog();
+    }
+
+    private int minBudget() {
+        return type.equals("gp") ? 5 : 2;
+    }
+
+    private int maxBudget() {
+        return type.equals("gp") ? 40 : NUM_FOLDS;
+    }
+
+    private void loadLog() throws IOException {
+        if (!logFile.exists()) {
+            return;
+        }
+        int ignored = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(logFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                JSONObject entry = new JSONObject(line);
+                // Entries from another type, seed or dataset (or from before these were logged) do not apply
+                if (!type.equals(entry.optString("type")) || !entry.has("seed") || entry.getLong("seed") != seed
+                        || !dataHash.equals(entry.optString("data"))) {
+                    ignored++;
+                    continue;
+                }
+                logged.put(logKey(entry.getJSONObject("params"), entry.getInt("budget")), entry.getDouble("accuracy"));
+            }
+        }
+        System.out.println("[Search] Resuming with " + logged.size() + " logged trial scores from " + logFile.getPath()
+            + (ignored > 0 ? " (" + ignored + " from other runs ignored)" : ""));
+    }
+
+    // Identifies one evaluation within this search: the same parameters always get the same
+    // folds, so a trial id alone would not do (ids repeat across seeds with different params)
+    private static String logKey(JSONObject params, int budget) {
+        StringBuilder key = new StringBuilder();
+        for (String name : new TreeSet<>(params.keySet())) {
+            Object value = params.get(name);
+            // Numbers are compared as doubles, so a value read back from the log matches the original
+            key.append(name).append('=')
+                .append(value instanceof Number ? Double.toString(params.getDouble(name)) : String.valueOf(value)).append(';');
+        }
+        return key.append('@').append(budget).toString();
+    }
+
+    /**
+     * Runs the given number of brackets of trialsPerBracket configurations each and returns
+     * the best result: the most accurate among those scored on the largest budget.
+     */
+    public Result run(int brackets, int trialsPerBracket) throws Exception {
+        // MLP trials mostly wait on Python, so they all get a virtual thread and SubprocessRunner
+        // limits how many Python processes run at once to the thread count
+        ExecutorService pool = type.equals("mlp") ? Executors.newVirtualThreadPerTaskExecutor() : Executors.newFixedThreadPool(threads);
+        if (type.equals("mlp")) {
+            SubprocessRunner.setMaxConcurrency(threads);
+        }
+        try {
+            for (int b = 0; b < brackets; b++) {
+                SplittableRandom random = new SplittableRandom(RandomStreams.deriveSeed(seed, b));
+                Result parent = best();
+                List<Result> trials = new ArrayList<>();
+                for (int i = 0; i < trialsPerBracket; i++) {
+                    JSONObject params = parent != null && i % 2 == 1 ? perturb(parent.params, random) : sample(random);
+                    trials.add(new Result("b" + b + "-t" + i, params, 0, Double.NaN));
+                }
+
+                // Successive halving: score everyone cheaply, promote the best 1/eta
+                int budget = minBudget();
+                while (true) {
+                    trials = evaluateAll(pool, trials, budget);
+                    trials.sort((x, y) -> x.accuracy != y.accuracy ? Double.compare(y.accuracy, x.accuracy) : x.id.compareTo(y.id));
+                    System.out.println("[Search] Bracket " + b + ", budget " + budget + ": best " + trials.get(0).id
+                        + " " + trials.get(0).params + " accuracy " + trials.get(0).accuracy);
+                    if (budget >= maxBudget() || trials.size() == 1) {
+                        break;
+                    }
+                    trials = new ArrayList<>(trials.subList(0, Math.max(1, trials.size() / eta)));
+                    budget = Math.min(maxBudget(), budget * eta);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return best();
+    }
+
+    private List<Result> evaluateAll(ExecutorService pool, List<Result> trials, int budget) throws Exception {
+        List<Future<Result>> futures = new ArrayList<>();
+        for (Result trial : trials) {
+            futures.add(pool.submit(() -> evaluate(trial, budget)));
+        }
+        List<Result> scored = new ArrayList<>();
+        for (Future<Result> future : futures) {
+            try {
+                scored.add(future.get());
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        synchronized (results) {
+            results.addAll(scored);
+        }
+        return scored;
+    }
+
+    private Result evaluate(Result trial, int budget) throws Exception {
+        String key = logKey(trial.params, budget);
+        if (logged.containsKey(key)) {
+            return new Result(trial.id, trial.params, budget, logged.get(key));
+        }
+        long start = System.nanoTime();
+        double accuracy = type.equals("gp")
+            ? crossValidate(trial.params, GP_FOLDS, GP_FOLDS, budget)
+            : crossValidate(trial.params, NUM_FOLDS, budget, 0);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        JSONObject entry = new JSONObject();
+        entry.put("type", type);
+        entry.put("seed", seed);
+        entry.put("data", dataHash);
+        entry.put("trial", trial.id);
+        entry.put("budget", budget);
+        entry.put("params", trial.params);
+        entry.put("accuracy", accuracy);
+        entry.put("seconds", seconds);
+        appendToLog(entry);
+        System.out.println("[Search] " + trial.id + " budget " + budget + ": accuracy " + String.format("%.4f", accuracy)
+            + " (" + String.format("%.1f", seconds) + "s)");
+        return new Result(trial.id, trial.params, budget, accuracy);
+    }
+
+    private synchronized void appendToLog(JSONObject entry) throws IOException {
+        File parent = logFile.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (PrintWriter writer = new PrintWriter(new FileWriter(logFile, true))) {
+            writer.println(entry.toString());
+        }
+    }
+
+    // Accuracy over the first foldsUsed of numFolds folds
+    private double crossValidate(JSONObject params, int numFolds, int foldsUsed, int generations) throws Exception {
+        long correct = 0;
+        long total = 0;
+        for (int i = 0; i < foldsUsed; i++) {
+            Instances train = data.trainCV(numFolds, i, new Random(seed + i));
+            Instances test = data.testCV(numFolds, i);
+            Classifier classifier = newClassifier(type, params, seed, generations);
+            classifier.buildClassifier(train);
+            double[] predicted;
+            try {
+                predicted = ((BatchClassifier) classifier).classifyBatch(test);
+            } finally {
+                if (classifier instanceof MLPWrapper) {
+                    ((MLPWrapper) classifier).release();
+                }
+            }
+            for (int j = 0; j < test.numInstances(); j++) {
+                if (predicted[j] == test.instance(j).classValue()) {
+                    correct++;
+                }
+            }
+            total += test.numInstances();
+        }
+        return total == 0 ? 0.0 : (double) correct / total;
+    }
+
+    /**
+     * Creates a classifier of the given type ("gp", "j48" or "mlp") configured from params.
+     * For GP, generations overrides the generation limit when positive.
+     */
+    public static Classifier newClassifier(String type, JSONObject params, long seed, int generations) {
+        switch (type) {
+            case "gp":
+                GPClassifier gp = new GPClassifier();
+                gp.setSeed(seed);
+                gp.setThreads(1); // trials already run in parallel
+                gp.setPopulationSize(params.getInt("populationSize"));
+                gp.setMutationRate(params.getDouble("mutationRate"));
+                gp.setCrossoverRate(params.getDouble("crossoverRate"));
+                if (generations > 0) {
+                    gp.setGenerations(generations);
+                }
+                return gp;
+            case "j48":
+                J48Classifier j48 = new J48Classifier();
+                j48.setSeed(seed);
+                j48.setConfidenceFactor((float) params.getDouble("confidenceFactor"));
+                j48.setMinNumObj(params.getInt("minNumObj"));
+                return j48;
+            case "mlp":
+                MLPWrapper mlp = new MLPWrapper();
+                mlp.setSeed(seed);
+                String[] layers = params.getString("hiddenLayers").split(",");
+                int[] sizes = new int[layers.length];
+                for (int i = 0; i < layers.length; i++) {
+                    sizes[i] = Integer.parseInt(layers[i]);
+                }
+                mlp.setHiddenLayerSizes(sizes);
+                mlp.setAlpha(params.getDouble("alpha"));
+                return mlp;
+            default:
+                throw new IllegalArgumentException("Unknown classifier type: " + type);
+        }
+    }
+
+    private JSONObject sample(SplittableRandom random) {
+        JSONObject params = new JSONObject();
+        switch (type) {
+            case "gp":
+                params.put("populationSize", (int) Math.round(logUniform(random, 20, 200)));
+                params.put("mutationRate", uniform(random, 0.05, 0.5));
+                params.put("crossoverRate", uniform(random, 0.5, 0.95));
+                break;
+            case "j48":
+                params.put("confidenceFactor", uniform(random, 0.05, 0.5));
+                params.put("minNumObj", (int) Math.round(logUniform(random, 2, 50)));
+                break;
+            default:
+                params.put("hiddenLayers", HIDDEN_LAYERS[random.nextInt(HIDDEN_LAYERS.length)]);
+                params.put("alpha", logUniform(random, 1e-5, 1e-1));
+        }
+        return params;
+    }
+
+    // Multiplies each numeric parameter by a log-normal factor; categorical ones change rarely
+    private JSONObject perturb(JSONObject parent, SplittableRandom random) {
+        JSONObject params = new JSONObject();
+        switch (type) {
+            case "gp":
+                params.put("populationSize", (int) Math.round(clamp(parent.getInt("populationSize") * jitter(random), 20, 200)));
+                params.put("mutationRate", clamp(parent.getDouble("mutationRate") * jitter(random), 0.05, 0.5));
+                params.put("crossoverRate", clamp(parent.getDouble("crossoverRate") * jitter(random), 0.5, 0.95));
+                break;
+            case "j48":
+                params.put("confidenceFactor", clamp(parent.getDouble("confidenceFactor") * jitter(random), 0.05, 0.5));
+                params.put("minNumObj", (int) Math.round(clamp(parent.getInt("minNumObj") * jitter(random), 2, 50)));
+                break;
+            default:
+                params.put("hiddenLayers", random.nextDouble() < 0.25
+                    ? HIDDEN_LAYERS[random.nextInt(HIDDEN_LAYERS.length)] : parent.getString("hiddenLayers"));
+                params.put("alpha", clamp(parent.getDouble("alpha") * jitter(random), 1e-5, 1e-1));
+        }
+        return params;
+    }
+
+    private static double uniform(SplittableRandom random, double min, double max) {
+        return min + random.nextDouble() * (max - min);
+    }
+
+    private static double logUniform(SplittableRandom random, double min, double max) {
+        return Math.exp(uniform(random, Math.log(min), Math.log(max)));
+    }
+
+    // exp(0.3 * N(0, 1)) via Box-Muller
+    private static double jitter(SplittableRandom random) {
+        double gaussian = Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+        return Math.exp(0.3 * gaussian);
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    // Most accurate configuration among those scored on the largest budget so far
+    private Result best() {
+        Result best = null;
+        synchronized (results) {
+            for (Result result : results) {
+                if (best == null || result.budget > best.budget
+                    || (result.budget == best.budget && result.accuracy > best.accuracy)) {
+                    best = result;
+                }
+            }
+        }
+        return best;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: java com.stockclassifier.HyperparameterSearch gp|j48|mlp [data/BTC_train.csv]"
+                + " [--trials 16] [--brackets 2] [--eta 2] [--threads N] [--seed 1] [--log file]");
+            return;
+        }
+        String type = args[0];
+        String dataPath = "data/BTC_train.csv";
+        int trials = 16;
+        int brackets = 2;
+        int eta = 2;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        String logPath = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--trials": trials = Integer.parseInt(args[++i]); break;
+                case "--brackets": brackets = Integer.parseInt(args[++i]); break;
+                case "--eta": eta = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--log": logPath = args[++i]; break;
+                default: dataPath = args[i];
+            }
+        }
+
+        if (logPath == null) {
+            String dataset = new File(dataPath).getName().replaceFirst("\\.csv$", "");
+            logPath = "results/tuning_" + type + "_seed" + seed + "_" + dataset + ".jsonl";
+        }
+
+        Instances data = StockClassifier.loadDataset(dataPath);
+        String dataHash = PreprocessingCache.contentHash(new File(dataPath));
+        HyperparameterSearch search = new HyperparameterSearch(type, data, dataHash, seed, eta, threads, new File(logPath));
+        Result best = search.run(brackets, trials);
+        System.out.println("\n[Search] Best configuration: " + best.params + " (" + best.id + ", accuracy "
+            + String.format("%.4f", best.accuracy) + " with budget " + best.budget + ")");
+        System.out.println("[Search] Trial log: " + logPath);
+    }
+}
@@ -0,0 +1,325 @@
+package com.stockclassifier;
+
+import classifiers.BatchClassifier;
+import classifiers.GPClassifier;
+import classifiers.J48Classifier;
+import classifiers.MLPWrapper;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import utils.LatencyHistogram;
+import weka.classifiers.Classifier;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Sustained concurrent prediction load against the GP, J48 and MLP classifiers.
+ *
+ * Each classifier is trained on the training file and then driven in two phases. The
+ * open-loop phase schedules requests at a fixed total rate, spread round-robin over the
+ * worker threads. Latency is measured from when a request was due, not when it was sent,
+ * so a stalled call also charges the requests queued behind it (coordinated-omission
+ * correction); the plain service time is reported next to it. The closed-loop phase runs
+ * every thread flat out to find the maximum throughput. A request is one classifyInstance
+ * call, or with --batch n one classifyBatch call over n rows. Rows are replayed from the
+ * test file, or with --synthetic drawn from a normal distribution per feature fitted to
+ * the training data. The per-classifier report is printed and written to
+ * results/loadtest_<timestamp>.json.
+ *
+ * Usage: java com.stockclassifier.LoadTest [--classifiers GP,J48,MLP] [--train BTC_train.csv]
+ *        [--test BTC_test.csv | --synthetic] [--rate 1000] [--threads 4] [--duration 10]
+ *        [--warmup 2] [--batch 1] [--seed 1]
+ */
+public class LoadTest {
+    private final int threads;
+    private final int batch;
+    private final long warmupNanos;
+    private final long durationNanos;
+    // Rows replayed in order by every worker, as instances and column by column
+    private final Instances rows;
+    private final double[][] columns;
+
+    // One request against a classifier
+    private interface Request {
+        double send(int firstRow) throws Exception;
+    }
+
+    // Keeps the JIT from discarding predictions nobody reads
+    private volatile double sink;
+
+    LoadTest(Instances rows, int threads, int batch, double warmupSeconds, double durationSeconds) {
+        this.rows = rows;
+        this.columns = BatchClassifier.toColumns(rows);
+        this.threads = threads;
+        this.batch = batch;
+        this.warmupNanos = (long) (warmupSeconds * 1e9);
+        this.durationNanos = (long) (durationSeconds * 1e9);
+    }
+
+    // A request over batch consecutive rows starting at firstRow (wrapping around)
+    private Request request(Classifier classifier) {
+        if (batch <= 1) {
+            return firstRow -> classifier.classifyInstance(rows.instance(firstRow));
+        }
+        int numFeatures = columns.length;
+        ThreadLocal<double[][]> buffers = ThreadLocal.withInitial(() -> new double[numFeatures][batch]);
+        return firstRow -> {
+            double[][] window = buffers.get();
+            for (int i = 0; i < batch; i++) {
+                int row = (firstRow + i) % rows.numInstances();
+                for (int f = 0; f < numFeatures; f++) {
+                    window[f][i] = columns[f][row];
+                }
+            }
+            return ((BatchClassifier) classifier).classifyBatch(window, batch)[batch - 1];
+        };
+    }
+
+    /**
+     * Sends requests due every 1/rate seconds for the duration. Worker w sends requests w,
+     * w + threads, ..., each as soon as it is due or, if the worker is behind, immediately.
+     */
+    JSONObject openLoop(Classifier classifier, double rate) throws InterruptedException {
+        Request request = request(classifier);
+        long interval = (long) (1e9 / rate);
+        LatencyHistogram corrected = new LatencyHistogram();
+        LatencyHistogram service = new LatencyHistogram();
+        AtomicLong errors = new AtomicLong();
+        AtomicLong completed = new AtomicLong();
+        long start = System.nanoTime() + 10_000_000L;
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        List<Thread> workers = new ArrayList<>();
+        for (int w = 0; w < threads; w++) {
+            final int worker = w;
+            workers.add(new Thread(() -> {
+                double checksum = 0;
+                for (long k = worker; ; k += threads) {
+                    long due = start + k * interval;
+                    if (due >= end) {
+                        sink = checksum;
+                        return;
+                    }
+                    long now;
+                    while ((now = System.nanoTime()) < due) {
+                        LockSupport.parkNanos(due - now);
+                    }
+                    boolean failed = false;
+                    try {
+                        checksum += request.send((int) ((k * batch) % rows.numInstances()));
+                    } catch (Exception e) {
+                        failed = true;
+                    }
+                    long done = System.nanoTime();
+                    if (due >= measureFrom) {
+                        corrected.record(done - due);
+                        service.record(done - now);
+                        completed.incrementAndGet();
+                        if (failed) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+            }, "load-" + w));
+        }
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        // Requests still running past the end are waited for, so the elapsed time can overrun
+        double elapsed = (System.nanoTime() - measureFrom) / 1e9;
+        JSONObject json = new JSONObject();
+        json.put("targetRate", rate);
+        json.put("requests", completed.get());
+        json.put("errors", errors.get());
+        json.put("achievedRate", completed.get() / elapsed);
+        json.put("latencyNanos", corrected.toJson());
+        json.put("serviceTimeNanos", service.toJson());
+        return json;
+    }
+
+    /**
+     * Every worker sends its next request as soon as the previous one returns; gives the
+     * maximum sustainable throughput with this many threads.
+     */
+    JSONObject closedLoop(Classifier classifier) throws InterruptedException {
+        Request request = request(classifier);
+        AtomicLong completed = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        List<Thread> workers = new ArrayList<>();
+        for (int w = 0; w < threads; w++) {
+            final int worker = w;
+            workers.add(new Thread(() -> {
+                double checksum = 0;
+                long k = worker;
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    try {
+                        checksum += request.send((int) ((k * batch) % rows.numInstances()));
+                    } catch (Exception e) {
+                        if (now >= measureFrom) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                    if (now >= measureFrom) {
+                        completed.incrementAndGet();
+                    }
+                    k += threads;
+                }
+                sink = checksum;
+            }, "load-" + w));
+        }
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double elapsed = (System.nanoTime() - measureFrom) / 1e9;
+        JSONObject json = new JSONObject();
+        json.put("requests", completed.get());
+        json.put("errors", errors.get());
+        json.put("requestsPerSecond", completed.get() / elapsed);
+        json.put("rowsPerSecond", completed.get() * (double) Math.max(1, batch) / elapsed);
+        return json;
+    }
+
+    // Rows drawn from a normal distribution per feature with the training data's mean and sd
+    static Instances synthetic(Instances training, int numRows, long seed) {
+        int numFeatures = training.numAttributes() - 1;
+        double[] mean = new double[numFeatures];
+        double[] sd = new double[numFeatures];
+        for (int f = 0; f < numFeatures; f++) {
+            mean[f] = training.meanOrMode(f);
+            sd[f] = Math.sqrt(training.variance(f));
+        }
+        Random random = new Random(seed);
+        Instances rows = new Instances(training, numRows);
+        for (int i = 0; i < numRows; i++) {
+            double[] values = new double[training.numAttributes()];
+            for (int f = 0; f < numFeatures; f++) {
+                values[f] = mean[f] + sd[f] * random.nextGaussian();
+            }
+            values[training.classIndex()] = random.nextInt(training.numClasses());
+            Instance instance = new DenseInstance(1.0, values);
+            rows.add(instance);
+        }
+        return rows;
+    }
+
+    private static Classifier train(String type, Instances data, long seed) throws Exception {
+        switch (type) {
+            case "GP":
+                GPClassifier gp = new GPClassifier();
+                gp.setSeed(seed);
+                gp.buildClassifier(data);
+                return gp;
+            case "J48":
+                J48Classifier j48 = new J48Classifier();
+                j48.setSeed(seed);
+                j48.buildClassifier(data);
+                return j48;
+            case "MLP":
+                MLPWrapper mlp = new MLPWrapper();
+                mlp.setSeed(seed);
+                mlp.buildClassifier(data);
+                return mlp;
+            default:
+                throw new IllegalArgumentException("Unknown classifier " + type + " (expected GP, J48 or MLP)");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] classifiers = {"GP", "J48", "MLP"};
+        String trainingFile = "BTC_train.csv";
+        String testFile = "BTC_test.csv";
+        boolean synthetic = false;
+        double rate = 1000;
+        int threads = 4;
+        double duration = 10;
+        double warmup = 2;
+        int batch = 1;
+        long seed = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--classifiers": classifiers = args[++i].toUpperCase().split(","); break;
+                case "--train": trainingFile = args[++i]; break;
+                case "--test": testFile = args[++i]; break;
+                case "--synthetic": synthetic = true; break;
+                case "--rate": rate = Double.parseDouble(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--duration": duration = Double.parseDouble(args[++i]); break;
+                case "--warmup": warmup = Double.parseDouble(args[++i]); break;
+                case "--batch": batch = Integer.parseInt(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                default:
+                    System.out.println("Usage: java com.stockclassifier.LoadTest [--classifiers GP,J48,MLP] [--train BTC_train.csv]"
+                        + " [--test BTC_test.csv | --synthetic] [--rate 1000] [--threads 4] [--duration 10] [--warmup 2]"
+                        + " [--batch 1] [--seed 1]");
+                    return;
+            }
+        }
+
+        Instances training = StockClassifier.loadDataset("data/" + trainingFile);
+        Instances rows = synthetic ? synthetic(training, 10000, seed) : StockClassifier.loadDataset("data/" + testFile);
+        LoadTest test = new LoadTest(rows, threads, batch, warmup, duration);
+        JSONArray reports = new JSONArray();
+        for (String type : classifiers) {
+            JSONObject report = new JSONObject();
+            report.put("classifier", type);
+            report.put("threads", threads);
+            report.put("batch", batch);
+            report.put("durationSeconds", duration);
+            report.put("rows", synthetic ? "synthetic" : testFile);
+            try {
+                long trainingStart = System.nanoTime();
+                Classifier classifier = train(type, training, seed);
+                report.put("trainingSeconds", (System.nanoTime() - trainingStart) / 1e9);
+                System.out.println("[Load] " + type + ": open loop at " + rate + " requests/s on " + threads + " threads");
+                report.put("openLoop", test.openLoop(classifier, rate));
+                System.out.println("[Load] " + type + ": closed loop (maximum throughput)");
+                report.put("closedLoop", test.closedLoop(classifier));
+            } catch (Exception e) {
+                System.err.println("[Load] " + type + " skipped: " + e.getMessage());
+                report.put("error", String.valueOf(e.getMessage()));
+            }
+            reports.put(report);
+        }
+
+        System.out.println(String.format("\n%-6s %10s %10s %10s %10s %10s %10s %12s %12s", "model", "rate/s", "p50(us)",
+            "p99(us)", "p99.9(us)", "max(us)", "svc p99", "max req/s", "max rows/s"));
+        for (int i = 0; i < reports.length(); i++) {
+            JSONObject report = reports.getJSONObject(i);
+            if (report.has("error")) {
+                System.out.println(String.format("%-6s failed: %s", report.getString("classifier"), report.getString("error")));
+                continue;
+            }
+            JSONObject open = report.getJSONObject("openLoop");
+            JSONObject latency = open.getJSONObject("latencyNanos");
+            JSONObject closed = report.getJSONObject("closedLoop");
+            System.out.println(String.format("%-6s %10.0f %10.1f %10.1f %10.1f %10.1f %10.1f %12.0f %12.0f", report.getString("classifier"),
+                open.getDouble("achievedRate"), latency.getLong("p50") / 1e3, latency.getLong("p99") / 1e3,
+                latency.getLong("p999") / 1e3, latency.getLong("max") / 1e3,
+                open.getJSONObject("serviceTimeNanos").getLong("p99") / 1e3,
+                closed.getDouble("requestsPerSecond"), closed.getDouble("rowsPerSecond")));
+        }
+        String timestamp = java.time.LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+        File reportFile = new File("results/loadtest_" + timestamp + ".json");
+        reportFile.getParentFile().mkdirs();
+        try (FileWriter writer = new FileWriter(reportFile)) {
+            writer.write(new JSONObject().put("timestamp", System.currentTimeMillis()).put("reports", reports).toString(2));
+        } catch (IOException e) {
+            System.err.println("[Load] Could not write " + reportFile + ": " + e.getMessage());
+        }
+        System.out.println("\nLatencies are measured from when each request was due. Report written to " + reportFile.getPath());
+    }
+}
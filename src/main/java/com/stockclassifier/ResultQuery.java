@@ -0,0 +1,136 @@
+package com.stockclassifier;
+
+import java.io.File;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import utils.ResultStore;
+
+/**
+ * Selects runs from the result store written by StockClassifier and aggregates their
+ * metrics per group: run count, accuracy mean, standard deviation and range, mean F1,
+ * precision, recall and runtime, and the summed confusion matrix.
+ */
+public class ResultQuery {
+    private static class Group {
+        int runs;
+        double accuracySum, accuracySquares, f1Sum, precisionSum, recallSum, runtimeSum;
+        double minAccuracy = Double.POSITIVE_INFINITY;
+        double maxAccuracy = Double.NEGATIVE_INFINITY;
+        double[][] confusion;
+
+        void add(JSONObject record) {
+            double accuracy = record.getDouble("accuracy");
+            runs++;
+            accuracySum += accuracy;
+            accuracySquares += accuracy * accuracy;
+            minAccuracy = Math.min(minAccuracy, accuracy);
+            maxAccuracy = Math.max(maxAccuracy, accuracy);
+            f1Sum += record.optDouble("f1", 0.0);
+            precisionSum += record.optDouble("precision", 0.0);
+            recallSum += record.optDouble("recall", 0.0);
+            runtimeSum += record.optDouble("runtimeSeconds", 0.0);
+            JSONArray matrix = record.optJSONArray("confusionMatrix");
+            if (matrix == null) {
+                return;
+            }
+            if (confusion == null) {
+                confusion = new double[matrix.length()][matrix.length()];
+            }
+            for (int i = 0; i < matrix.length() && i < confusion.length; i++) {
+                JSONArray row = matrix.getJSONArray(i);
+                for (int j = 0; j < row.length() && j < confusion.length; j++) {
+                    confusion[i][j] += row.getDouble(j);
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String storePath = StockClassifier.RESULT_STORE.getPath();
+        String classifier = null;
+        String dataset = null;
+        Long seed = null;
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        String groupBy = "classifier";
+        boolean list = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--store": storePath = args[++i]; break;
+                case "--classifier": classifier = args[++i]; break;
+                case "--dataset": dataset = args[++i]; break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--since": since = startOfDay(args[++i]); break;
+                case "--until": until = startOfDay(args[++i]); break;
+                case "--group-by": groupBy = args[++i]; break;
+                case "--list": list = true; break;
+                default:
+                    System.out.println("Usage: java com.stockclassifier.ResultQuery [--store results/store] [--classifier GP]"
+                        + " [--dataset BTC_train.csv] [--seed 1] [--since 2025-05-01] [--until 2025-06-01]"
+                        + " [--group-by classifier|dataset|seed|evaluation|none] [--list]");
+                    return;
+            }
+        }
+
+        final String classifierFilter = classifier;
+        final String datasetFilter = dataset;
+        final Long seedFilter = seed;
+        final long from = since;
+        final long to = until;
+        Predicate<ResultStore.Entry> filter = entry -> (classifierFilter == null || entry.classifier.equalsIgnoreCase(classifierFilter))
+            && (datasetFilter == null || entry.dataset.equals(datasetFilter))
+            && (seedFilter == null || entry.seed == seedFilter)
+            && entry.timestamp >= from && entry.timestamp < to;
+
+        long start = System.nanoTime();
+        ResultStore store = new ResultStore(new File(storePath));
+        List<ResultStore.Entry> entries = store.query(filter);
+        List<JSONObject> records = store.read(entries);
+
+        Map<String, Group> groups = new TreeMap<>();
+        for (JSONObject record : records) {
+            String key = groupBy.equals("none") ? "all" : record.opt(groupBy) != null ? String.valueOf(record.get(groupBy)) : "-";
+            groups.computeIfAbsent(key, k -> new Group()).add(record);
+            if (list) {
+                System.out.println(Instant.ofEpochMilli(record.getLong("timestamp")) + "  " + record.getString("classifier")
+                    + "  seed " + record.getLong("seed") + "  " + record.getString("dataset") + "  "
+                    + record.optString("evaluation") + "  accuracy " + String.format("%.4f", record.getDouble("accuracy")));
+            }
+        }
+
+        System.out.println(String.format("%-24s %6s %10s %8s %8s %8s %8s %8s %8s %10s",
+            groupBy, "runs", "accuracy", "sd", "min", "max", "f1", "prec", "recall", "runtime(s)"));
+        for (Map.Entry<String, Group> e : groups.entrySet()) {
+            Group g = e.getValue();
+            double mean = g.accuracySum / g.runs;
+            double variance = g.runs > 1 ? Math.max(0.0, (g.accuracySquares - g.runs * mean * mean) / (g.runs - 1)) : 0.0;
+            System.out.println(String.format("%-24s %6d %10.4f %8.4f %8.4f %8.4f %8.4f %8.4f %8.4f %10.2f",
+                e.getKey(), g.runs, mean, Math.sqrt(variance), g.minAccuracy, g.maxAccuracy,
+                g.f1Sum / g.runs, g.precisionSum / g.runs, g.recallSum / g.runs, g.runtimeSum / g.runs));
+            if (g.confusion != null) {
+                List<String> rows = new ArrayList<>();
+                for (double[] row : g.confusion) {
+                    StringBuilder sb = new StringBuilder();
+                    for (double value : row) {
+                        sb.append(sb.length() == 0 ? "" : " ").append(String.format("%.0f", value));
+                    }
+                    rows.add("[" + sb + "]");
+                }
+                System.out.println(String.format("%-24s confusion (actual x predicted): %s", "", String.join(" ", rows)));
+            }
+        }
+        System.out.println("\n" + records.size() + " runs matched in " + String.format("%.1f", (System.nanoTime() - start) / 1e6) + " ms");
+    }
+
+    private static long startOfDay(String date) {
+        return LocalDate.parse(date).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
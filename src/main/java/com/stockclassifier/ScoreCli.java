@@ -0,0 +1,317 @@
+package com.stockclassifier;
+
+import classifiers.BatchClassifier;
+import classifiers.GPClassifier;
+import classifiers.J48Classifier;
+import classifiers.MLPWrapper;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+
+/**
+ * Non-interactive batch scoring with saved models, for cron jobs and other short-lived runs.
+ *
+ * "train" fits a classifier and saves it with its feature count. "score" loads one or more
+ * saved models and prints one line per input row with each model's prediction (and with
+ * --probabilities its class-1 probability). Input rows are plain comma-separated numbers,
+ * parsed here rather than through Weka's loaders, so scoring never touches the converter or
+ * GUI classes; a header line is skipped and a trailing label column is dropped. Scoring only
+ * needs the classes below plus the model's own, which is what the fast-start profile packs
+ * into the slim jar and its class-data-sharing archive (see the README). --timing reports
+ * the time from JVM start to the first prediction on stderr.
+ *
+ * Usage: java com.stockclassifier.ScoreCli train --classifier GP|J48|MLP --model gp.model [--train BTC_train.csv] [--seed 1]
+ *             [--generations n] [--checkpoint file [--checkpoint-every 10]] [--dedup replace|skip]
+ *             [--racing [quantile]] [--block-size rows] [--multi-objective [tolerance]]
+ *        java com.stockclassifier.ScoreCli score --model gp.model [--model j48.model ...] [--input rows.csv]
+ *             [--output predictions.csv] [--probabilities] [--timing]
+ */
+public class ScoreCli {
+
+    // Saved model file: magic, version, number of features, then the serialized classifier
+    private static final int MODEL_MAGIC = 0x53434f52; // "SCOR"
+    // Version 2: MLP models embed their pickled network; GP models hold only the best tree
+    private static final int MODEL_VERSION = 2;
+
+    static final class SavedModel {
+        final int numFeatures;
+        final Classifier classifier;
+
+        SavedModel(int numFeatures, Classifier classifier) {
+            this.numFeatures = numFeatures;
+            this.classifier = classifier;
+        }
+    }
+
+    // Only the feature count is kept from the training header: deserializing Weka's Instances
+    // costs a noticeable share of a short run's start-up
+    static void save(String path, Instances header, Classifier classifier) throws IOException {
+        File parent = new File(path).getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(MODEL_MAGIC);
+            out.writeInt(MODEL_VERSION);
+            out.writeInt(header.numAttributes() - 1);
+            out.writeObject(classifier);
+        }
+    }
+
+    static SavedModel load(String path) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            if (in.readInt() != MODEL_MAGIC) {
+                throw new IOException(path + " is not a saved model");
+            }
+            int version = in.readInt();
+            if (version != MODEL_VERSION) {
+                throw new IOException(path + " has unsupported model version " + version);
+            }
+            int numFeatures = in.readInt();
+            Classifier classifier = (Classifier) in.readObject();
+            if (!(classifier instanceof BatchClassifier)) {
+                throw new IOException(path + " does not hold a GP, J48 or MLP model");
+            }
+            return new SavedModel(numFeatures, classifier);
+        }
+    }
+
+    /**
+     * Reads comma-separated rows column by column: columns[f][i]. A first line that does not
+     * start with a number is taken as a header; a value beyond numFeatures (the label) is ignored.
+     */
+    static double[][] readRows(Reader source, int numFeatures, int[] numRows) throws IOException {
+        List<double[]> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(source)) {
+            String line;
+            boolean first = true;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (first && !isNumber(fields[0])) {
+                    first = false;
+                    continue;
+                }
+                first = false;
+                if (fields.length < numFeatures) {
+                    throw new IOException("Row " + (rows.size() + 1) + " has " + fields.length + " values, expected " + numFeatures);
+                }
+                double[] row = new double[numFeatures];
+                for (int f = 0; f < numFeatures; f++) {
+                    row[f] = Double.parseDouble(fields[f].trim());
+                }
+                rows.add(row);
+            }
+        }
+        double[][] columns = new double[numFeatures][rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            for (int f = 0; f < numFeatures; f++) {
+                columns[f][i] = rows.get(i)[f];
+            }
+        }
+        numRows[0] = rows.size();
+        return columns;
+    }
+
+    private static boolean isNumber(String field) {
+        try {
+            Double.parseDouble(field.trim());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static Classifier newClassifier(String type, long seed) {
+        switch (type) {
+            case "GP":
+                GPClassifier gp = new GPClassifier();
+                gp.setSeed(seed);
+                return gp;
+            case "J48":
+                J48Classifier j48 = new J48Classifier();
+                j48.setSeed(seed);
+                return j48;
+            case "MLP":
+                MLPWrapper mlp = new MLPWrapper();
+                mlp.setSeed(seed);
+                return mlp;
+            default:
+                throw new IllegalArgumentException("Unknown classifier " + type + " (expected GP, J48 or MLP)");
+        }
+    }
+
+    private static void train(String[] args) throws Exception {
+        String type = null;
+        String model = null;
+        String trainingFile = "BTC_train.csv";
+        long seed = 1;
+        int generations = 0;
+        GPOptions gpOptions = new GPOptions();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--classifier": type = args[++i].toUpperCase(); break;
+                case "--model": model = args[++i]; break;
+                case "--train": trainingFile = args[++i]; break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--generations": generations = Integer.parseInt(args[++i]); break;
+                default:
+                    int next = gpOptions.parse(args, i);
+                    if (next == i) {
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                    }
+                    i = next - 1;
+            }
+        }
+        if (type == null || model == null) {
+            throw new IllegalArgumentException("train needs --classifier and --model");
+        }
+        Instances data = StockClassifier.loadDataset("data/" + trainingFile);
+        Classifier classifier = newClassifier(type, seed);
+        if (classifier instanceof GPClassifier) {
+            if (generations > 0) {
+                ((GPClassifier) classifier).setGenerations(generations);
+            }
+            gpOptions.applyTo((GPClassifier) classifier);
+            gpOptions.applyCheckpoint((GPClassifier) classifier);
+        }
+        try {
+            classifier.buildClassifier(data);
+            save(model, data, classifier);
+        } finally {
+            release(classifier);
+        }
+        System.out.println("[Score] Saved " + type + " model to " + model);
+    }
+
+    private static void score(String[] args) throws Exception {
+        List<String> models = new ArrayList<>();
+        String input = null;
+        String output = null;
+        boolean probabilities = false;
+        boolean timing = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--model": models.add(args[++i]); break;
+                case "--input": input = args[++i]; break;
+                case "--output": output = args[++i]; break;
+                case "--probabilities": probabilities = true; break;
+                case "--timing": timing = true; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (models.isEmpty()) {
+            throw new IllegalArgumentException("score needs at least one --model");
+        }
+
+        long loadStart = System.nanoTime();
+        List<SavedModel> loaded = new ArrayList<>();
+        try {
+            for (String path : models) {
+                loaded.add(load(path));
+            }
+            score(loaded, models, input, output, probabilities, timing, loadStart);
+        } finally {
+            for (SavedModel model : loaded) {
+                release(model.classifier);
+            }
+        }
+    }
+
+    // The JVM exits before a cleaner would delete an MLP's model file, so it is deleted here
+    private static void release(Classifier classifier) {
+        if (classifier instanceof MLPWrapper) {
+            ((MLPWrapper) classifier).release();
+        }
+    }
+
+    private static void score(List<SavedModel> loaded, List<String> models, String input, String output,
+            boolean probabilities, boolean timing, long loadStart) throws Exception {
+        int numFeatures = loaded.get(0).numFeatures;
+        for (int m = 1; m < loaded.size(); m++) {
+            if (loaded.get(m).numFeatures != numFeatures) {
+                throw new IllegalArgumentException(models.get(m) + " expects " + loaded.get(m).numFeatures
+                    + " features, " + models.get(0) + " expects " + numFeatures);
+            }
+        }
+        long loadNanos = System.nanoTime() - loadStart;
+
+        int[] numRows = new int[1];
+        Reader source = input == null ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+            : Files.newBufferedReader(Paths.get(input), StandardCharsets.UTF_8);
+        double[][] columns = readRows(source, numFeatures, numRows);
+
+        long scoreStart = System.nanoTime();
+        double[][] predictions = new double[loaded.size()][];
+        double[][] distributions = new double[loaded.size()][];
+        for (int m = 0; m < loaded.size(); m++) {
+            BatchClassifier classifier = (BatchClassifier) loaded.get(m).classifier;
+            if (probabilities) {
+                distributions[m] = classifier.distributionBatch(columns, numRows[0]);
+            }
+            predictions[m] = classifier.classifyBatch(columns, numRows[0]);
+        }
+        long scoreNanos = System.nanoTime() - scoreStart;
+        // Taken before the output is written
+        long firstPrediction = System.currentTimeMillis();
+
+        try (PrintStream out = output == null ? System.out
+                : new PrintStream(new BufferedOutputStream(new FileOutputStream(output)), false, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < numRows[0]; i++) {
+                line.setLength(0);
+                for (int m = 0; m < loaded.size(); m++) {
+                    if (m > 0) {
+                        line.append(',');
+                    }
+                    line.append((int) predictions[m][i]);
+                    if (probabilities) {
+                        line.append(',').append(distributions[m][i]);
+                    }
+                }
+                out.println(line);
+            }
+            out.flush();
+        }
+
+        if (timing) {
+            // Loads the management classes only now, so they do not count towards the measurement
+            long sinceStart = firstPrediction - ManagementFactory.getRuntimeMXBean().getStartTime();
+            System.err.println(String.format("[Score] %d rows, %d models: JVM start to first prediction %d ms"
+                + " (model load %.1f ms, scoring %.1f ms)", numRows[0], loaded.size(), sinceStart, loadNanos / 1e6, scoreNanos / 1e6));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("train")) {
+            train(args);
+        } else if (args.length > 0 && args[0].equals("score")) {
+            score(args);
+        } else {
+            System.out.println("Usage: ScoreCli train --classifier GP|J48|MLP --model gp.model [--train BTC_train.csv] [--seed 1]"
+                + " [--generations n] " + GPOptions.USAGE);
+            System.out.println("       ScoreCli score --model gp.model [--model j48.model ...] [--input rows.csv]"
+                + " [--output predictions.csv] [--probabilities] [--timing]");
+        }
+    }
+}
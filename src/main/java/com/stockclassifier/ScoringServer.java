@@ -0,0 +1,396 @@
+package com.stockclassifier;
+
+import classifiers.BatchClassifier;
+import classifiers.GPClassifier;
+import classifiers.J48Classifier;
+import classifiers.MLPWrapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import utils.LatencyHistogram;
+import weka.core.Instances;
+
+/**
+ * Long-running scoring service for live signals. The current model sits behind an atomic
+ * reference: every request reads it once and is scored by that model to the end, so requests
+ * never take a lock, and a retrain finishing mid-request swaps the reference without
+ * dropping or failing anything in flight. Retraining reruns StockClassifier's loading and
+ * training for the configured classifier on a background thread, periodically or on demand;
+ * a failed retrain keeps the current model.
+ *
+ * HTTP endpoints (JDK HttpServer, one virtual thread per request):
+ *   POST /predict  {"rows": [[f0, f1, ...], ...]} -> model version, predictions, probabilities
+ *   POST /retrain  starts a background retrain unless one is running
+ *   GET  /metrics  requests, rows/s, errors and latency percentiles of the current and
+ *                  recently retired models
+ */
+public class ScoringServer {
+    // Statistics of retired models kept for /metrics
+    private static final int RETIRED_HISTORY = 5;
+
+    // Serving statistics of one model version; kept for /metrics after the model itself is dropped
+    static final class ModelStats {
+        final int version;
+        final String classifier;
+        final long seed;
+        final double trainingSeconds;
+        final long activatedAt = System.currentTimeMillis();
+        volatile long retiredAt;
+        final LongAdder requests = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        ModelStats(int version, String classifier, long seed, double trainingSeconds) {
+            this.version = version;
+            this.classifier = classifier;
+            this.seed = seed;
+            this.trainingSeconds = trainingSeconds;
+        }
+
+        JSONObject toJson() {
+            long end = retiredAt != 0 ? retiredAt : System.currentTimeMillis();
+            double activeSeconds = Math.max(1e-3, (end - activatedAt) / 1000.0);
+            JSONObject json = new JSONObject();
+            json.put("version", version);
+            json.put("classifier", classifier);
+            json.put("seed", seed);
+            json.put("trainingSeconds", trainingSeconds);
+            json.put("activatedAt", activatedAt);
+            if (retiredAt != 0) {
+                json.put("retiredAt", retiredAt);
+            }
+            json.put("requests", requests.sum());
+            json.put("rows", rows.sum());
+            json.put("errors", errors.sum());
+            json.put("inFlight", inFlight.get());
+            json.put("requestsPerSecond", requests.sum() / activeSeconds);
+            json.put("rowsPerSecond", rows.sum() / activeSeconds);
+            json.put("latencyNanos", latency.toJson());
+            return json;
+        }
+    }
+
+    // A trained model and its statistics. Once retired, the last request still using it
+    // releases it (deleting an MLP's model file); nothing else refers to it afterwards.
+    static final class ServedModel {
+        final ModelStats stats;
+        final BatchClassifier model;
+        final int numFeatures;
+        // Probability above which a row is class 1 (GP calibrates its own)
+        final double threshold;
+        volatile boolean retired;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ServedModel(ModelStats stats, BatchClassifier model, int numFeatures, double threshold) {
+            this.stats = stats;
+            this.model = model;
+            this.numFeatures = numFeatures;
+            this.threshold = threshold;
+        }
+
+        void releaseIfIdle() {
+            if (retired && stats.inFlight.get() == 0 && released.compareAndSet(false, true) && model instanceof MLPWrapper) {
+                ((MLPWrapper) model).release();
+            }
+        }
+    }
+
+    // Scores of one request and the version of the model that produced them
+    public static final class Prediction {
+        public final int modelVersion;
+        public final double[] predictions;
+        public final double[] probabilities;
+
+        Prediction(int modelVersion, double[] predictions, double[] probabilities) {
+            this.modelVersion = modelVersion;
+            this.predictions = predictions;
+            this.probabilities = probabilities;
+        }
+    }
+
+    private final String classifier;
+    private final String trainingPath;
+    private final long seed;
+    private final AtomicReference<ServedModel> current = new AtomicReference<>();
+    private final Deque<ModelStats> retired = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger nextVersion = new AtomicInteger(1);
+    private final AtomicBoolean retraining = new AtomicBoolean();
+    private final ScheduledExecutorService retrainer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "scoring-retrain");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param classifier GP, J48 or MLP
+     * @param trainingPath data file the model is (re)trained on; re-read on every retrain
+     */
+    public ScoringServer(String classifier, String trainingPath, long seed) {
+        this.classifier = classifier.toUpperCase();
+        this.trainingPath = trainingPath;
+        this.seed = seed;
+        if (!this.classifier.equals("GP") && !this.classifier.equals("J48") && !this.classifier.equals("MLP")) {
+            throw new IllegalArgumentException("Unknown classifier " + classifier + " (expected GP, J48 or MLP)");
+        }
+    }
+
+    /**
+     * Scores rows of features with the model that is current when the call starts.
+     *
+     * @throws IllegalStateException if no model has been trained yet
+     * @throws IllegalArgumentException if a row has the wrong number of features
+     */
+    public Prediction score(double[][] rows) throws Exception {
+        ServedModel model;
+        while (true) {
+            model = current.get();
+            if (model == null) {
+                throw new IllegalStateException("No model has been trained yet");
+            }
+            model.stats.inFlight.incrementAndGet();
+            // A model retired between the read and the increment may already be released;
+            // the swap has published its replacement, so score with that instead
+            if (!model.retired) {
+                break;
+            }
+            model.stats.inFlight.decrementAndGet();
+            model.releaseIfIdle();
+        }
+        ModelStats stats = model.stats;
+        long start = System.nanoTime();
+        try {
+            double[][] columns = new double[model.numFeatures][rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                if (rows[i].length != model.numFeatures) {
+                    throw new IllegalArgumentException("Row " + i + " has " + rows[i].length + " features, the model expects "
+                        + model.numFeatures);
+                }
+                for (int f = 0; f < model.numFeatures; f++) {
+                    columns[f][i] = rows[i][f];
+                }
+            }
+            // One batch call gives both outputs, so the MLP costs one Python run per request
+            double[] probabilities = rows.length == 0 ? new double[0] : model.model.distributionBatch(columns, rows.length);
+            double[] predictions = new double[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                predictions[i] = probabilities[i] > model.threshold ? 1.0 : 0.0;
+            }
+            stats.rows.add(rows.length);
+            return new Prediction(stats.version, predictions, probabilities);
+        } catch (Exception e) {
+            stats.errors.increment();
+            throw e;
+        } finally {
+            stats.latency.record(System.nanoTime() - start);
+            stats.requests.increment();
+            stats.inFlight.decrementAndGet();
+            model.releaseIfIdle();
+        }
+    }
+
+    /**
+     * Starts a retrain on the background thread and returns true, or returns false when one
+     * is already running. The new model replaces the current one as soon as it is trained.
+     */
+    public boolean retrainAsync() {
+        if (!retraining.compareAndSet(false, true)) {
+            return false;
+        }
+        retrainer.execute(() -> {
+            try {
+                swap(train());
+            } catch (Exception e) {
+                ServedModel model = current.get();
+                System.err.println("[Serve] Retrain failed, " + (model != null ? "still serving model " + model.stats.version : "no model to serve")
+                    + ": " + e.getMessage());
+            } finally {
+                retraining.set(false);
+            }
+        });
+        return true;
+    }
+
+    // Retrains every minutes minutes, starting one period from now
+    public void scheduleRetrain(long minutes) {
+        retrainer.scheduleWithFixedDelay(this::retrainAsync, minutes, minutes, TimeUnit.MINUTES);
+    }
+
+    // Trains the first model on the calling thread
+    public void trainInitialModel() throws Exception {
+        swap(train());
+    }
+
+    private ServedModel train() throws Exception {
+        long start = System.nanoTime();
+        Instances data = StockClassifier.loadDataset(trainingPath);
+        BatchClassifier model;
+        double threshold = 0.5;
+        switch (classifier) {
+            case "GP":
+                GPClassifier gp = new GPClassifier();
+                gp.setSeed(seed);
+                gp.buildClassifier(data);
+                threshold = gp.getCalibration().getThreshold();
+                model = gp;
+                break;
+            case "J48":
+                J48Classifier j48 = new J48Classifier();
+                j48.setSeed(seed);
+                j48.buildClassifier(data);
+                model = j48;
+                break;
+            default:
+                MLPWrapper mlp = new MLPWrapper();
+                mlp.setSeed(seed);
+                mlp.buildClassifier(data);
+                model = mlp;
+        }
+        ModelStats stats = new ModelStats(nextVersion.getAndIncrement(), classifier, seed, (System.nanoTime() - start) / 1e9);
+        return new ServedModel(stats, model, data.numAttributes() - 1, threshold);
+    }
+
+    // Requests that already hold the previous model finish on it, and the last of them
+    // releases it; only its statistics are kept
+    private void swap(ServedModel next) {
+        ServedModel previous = current.getAndSet(next);
+        if (previous != null) {
+            previous.stats.retiredAt = System.currentTimeMillis();
+            previous.retired = true;
+            previous.releaseIfIdle();
+            retired.addFirst(previous.stats);
+            while (retired.size() > RETIRED_HISTORY) {
+                retired.pollLast();
+            }
+        }
+        System.out.println("[Serve] Now serving " + classifier + " model " + next.stats.version + " (trained in "
+            + String.format("%.1f", next.stats.trainingSeconds) + " s)" + (previous != null ? ", replacing model " + previous.stats.version : ""));
+    }
+
+    public JSONObject metrics() {
+        JSONObject json = new JSONObject();
+        ServedModel model = current.get();
+        json.put("retraining", retraining.get());
+        if (model != null) {
+            json.put("current", model.stats.toJson());
+        }
+        JSONArray history = new JSONArray();
+        for (ModelStats old : retired) {
+            history.put(old.toJson());
+        }
+        json.put("retired", history);
+        return json;
+    }
+
+    public HttpServer start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/predict", exchange -> {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                respond(exchange, 405, error("POST a JSON object with \"rows\""));
+                return;
+            }
+            try {
+                JSONArray rowsJson = new JSONObject(readBody(exchange)).getJSONArray("rows");
+                double[][] rows = new double[rowsJson.length()][];
+                for (int i = 0; i < rows.length; i++) {
+                    JSONArray row = rowsJson.getJSONArray(i);
+                    rows[i] = new double[row.length()];
+                    for (int f = 0; f < rows[i].length; f++) {
+                        rows[i][f] = row.getDouble(f);
+                    }
+                }
+                Prediction prediction = score(rows);
+                JSONObject json = new JSONObject();
+                json.put("model", prediction.modelVersion);
+                json.put("classifier", classifier);
+                json.put("predictions", new JSONArray(prediction.predictions));
+                json.put("probabilities", new JSONArray(prediction.probabilities));
+                respond(exchange, 200, json);
+            } catch (JSONException | IllegalArgumentException e) {
+                respond(exchange, 400, error(e.getMessage()));
+            } catch (IllegalStateException e) {
+                respond(exchange, 503, error(e.getMessage()));
+            } catch (Exception e) {
+                respond(exchange, 500, error(e.getMessage()));
+            }
+        });
+        server.createContext("/retrain", exchange -> {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                respond(exchange, 405, error("POST to start a retrain"));
+                return;
+            }
+            JSONObject json = new JSONObject();
+            json.put("started", retrainAsync());
+            respond(exchange, 202, json);
+        });
+        server.createContext("/metrics", exchange -> respond(exchange, 200, metrics()));
+        server.start();
+        return server;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static JSONObject error(String message) {
+        return new JSONObject().put("error", String.valueOf(message));
+    }
+
+    private static void respond(HttpExchange exchange, int status, JSONObject body) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String classifier = "GP";
+        String trainingFile = "BTC_train.csv";
+        long seed = 1;
+        int port = 8080;
+        long retrainMinutes = 0;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--classifier": classifier = args[++i]; break;
+                case "--train": trainingFile = args[++i]; break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--retrain-minutes": retrainMinutes = Long.parseLong(args[++i]); break;
+                default:
+                    System.out.println("Usage: java com.stockclassifier.ScoringServer [--classifier GP|J48|MLP] [--train BTC_train.csv]"
+                        + " [--seed 1] [--port 8080] [--retrain-minutes 0]");
+                    return;
+            }
+        }
+        ScoringServer scoring = new ScoringServer(classifier, "data/" + trainingFile, seed);
+        scoring.trainInitialModel();
+        if (retrainMinutes > 0) {
+            scoring.scheduleRetrain(retrainMinutes);
+        }
+        HttpServer server = scoring.start(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1), "scoring-shutdown"));
+        System.out.println("[Serve] Listening on port " + port + " (POST /predict, POST /retrain, GET /metrics)");
+    }
+}
@@ -1,11 +1,15 @@
 package com.stockclassifier;
 
+import classifiers.BatchClassifier;
 import classifiers.GPClassifier;
 import classifiers.J48Classifier;
 import classifiers.MLPWrapper;
+import main.java.models.Individual;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.converters.ConverterUtils.DataSource;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
 import weka.classifiers.Evaluation;
 import java.io.File;
 import java.io.FileWriter;
@@ -13,17 +17,45 @@ import java.util.Random;
 import java.util.Scanner;
 import weka.filters.Filter;
 import weka.filters.unsupervised.attribute.NumericToNominal;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import utils.StatisticalTest;
+import utils.Metrics;
+import utils.PreprocessingCache;
+import utils.ResultStore;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import java.util.InputMismatchException;
 
 public class StockClassifier {
     private static final int NUM_FOLDS = 10;
     private static final double ALPHA = 0.05; // Significance level for statistical test
     private static final Map<String, double[]> resultsMap = new HashMap<>();
+    // Every run is appended here; query it with com.stockclassifier.ResultQuery
+    static final File RESULT_STORE = new File("results/store");
+    // Preprocessed datasets and fold orders shared by repeated runs on the same data
+    static final PreprocessingCache PREPROCESSING_CACHE = PreprocessingCache.fromSystemProperties();
 
     public static void main(String[] args) {
+        // GP settings such as --checkpoint come from the command line; everything else is prompted for
+        GPOptions gpOptions;
+        try {
+            gpOptions = GPOptions.parseAll(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        // Metrics are opt-in: -Dmetrics.enabled=true [-Dmetrics.interval=<seconds>]
+        String runTimestamp = java.time.LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+        File metricsFile = new File("results/metrics_" + runTimestamp + ".json");
+        Metrics.startPeriodicExport(metricsFile, Long.getLong("metrics.interval", 10L));
         try {
             Scanner scanner = new Scanner(System.in);
             
@@ -68,7 +100,6 @@ public class StockClassifier {
                     seed = Long.parseLong(seedInput);
                 }
             }
-            Random random = new Random(seed);
             
             // Step 3: Get data file names (automatically prepend data/ directory)
             System.out.print("Enter training data filename (e.g., BTC_train.csv): ");
@@ -76,6 +107,29 @@ public class StockClassifier {
             System.out.print("Enter test data filename (e.g., BTC_test.csv): ");
             String testFile = scanner.next();
             
+            // Step 4: Choose evaluation mode
+            System.out.println("\nChoose an evaluation mode:");
+            System.out.println("1. " + NUM_FOLDS + "-fold cross-validation (shuffled)");
+            System.out.println("2. Walk-forward, expanding window (time ordered)");
+            System.out.println("3. Walk-forward, sliding window (time ordered)");
+            System.out.print("Enter your choice (1-3): ");
+            int evaluationMode;
+            try {
+                evaluationMode = Integer.parseInt(scanner.next().trim());
+            } catch (NumberFormatException e) {
+                evaluationMode = 1;
+            }
+            if (evaluationMode < 1 || evaluationMode > 3) {
+                System.out.println("Invalid choice, using cross-validation.");
+                evaluationMode = 1;
+            }
+            WalkForwardValidator walkForward = null;
+            if (evaluationMode == 2) {
+                walkForward = new WalkForwardValidator(WalkForwardValidator.WindowType.EXPANDING, NUM_FOLDS, 0.5);
+            } else if (evaluationMode == 3) {
+                walkForward = new WalkForwardValidator(WalkForwardValidator.WindowType.SLIDING, NUM_FOLDS, 0.5);
+            }
+            
             // Construct full paths
             String trainingPath = "data/" + trainingFile;
             String testPath = "data/" + testFile;
@@ -94,20 +148,7 @@ public class StockClassifier {
             System.out.println("Loading training data from: " + trainingPath);
             
             // Load data
-            DataSource source = new DataSource(trainingPath);
-            Instances data = source.getDataSet();
-            data.setClassIndex(data.numAttributes() - 1);
-            
-            System.out.println("Loaded " + data.numInstances() + " instances with " + data.numAttributes() + " attributes.");
-            
-            // Convert class attribute to nominal if it is numeric
-            if (data.classAttribute().isNumeric()) {
-                System.out.println("Converting class attribute from numeric to nominal...");
-                NumericToNominal convert = new NumericToNominal();
-                convert.setAttributeIndices("" + (data.classIndex() + 1)); // Weka uses 1-based indices
-                convert.setInputFormat(data);
-                data = Filter.useFilter(data, convert);
-            }
+            Instances data = loadDataset(trainingPath);
             
             // Create results directory if it doesn't exist
             File resultsDir = new File("results");
@@ -120,6 +161,9 @@ public class StockClassifier {
             Evaluation eval = new Evaluation(data);
             String classifierName = "";
             String modelStructure = "";
+            // Set for multi-objective GP runs: the final Pareto front and the program chosen from it
+            JSONArray paretoFront = null;
+            JSONObject selectedProgram = null;
             
             // Start timing
             long startTime = System.currentTimeMillis();
@@ -130,33 +174,42 @@ public class StockClassifier {
                         System.out.println("Initializing GP Classifier with seed: " + seed);
                         GPClassifier gpClassifier = new GPClassifier();
                         gpClassifier.setSeed(seed);
-                        gpClassifier.buildClassifier(data);
-                        eval.crossValidateModel(gpClassifier, data, NUM_FOLDS, random);
+                        gpOptions.applyTo(gpClassifier);
+                        if (walkForward != null) {
+                            // Each step is a different training run, so a checkpoint could not be resumed
+                            if (gpOptions.hasCheckpoint()) {
+                                System.out.println("[GP] Checkpointing is not used for walk-forward evaluation.");
+                            }
+                            eval = walkForward.evaluate(gpClassifier, data);
+                        } else {
+                            eval = crossValidate(gpClassifier, data, seed, false);
+                            // Only the final model is checkpointed: the folds train copies in parallel
+                            gpOptions.applyCheckpoint(gpClassifier);
+                            gpClassifier.buildClassifier(data);
+                        }
                         classifierName = "GP Classifier";
                         modelStructure = gpClassifier.getModelStructure();
+                        if (!gpClassifier.getParetoFront().isEmpty()) {
+                            paretoFront = new JSONArray();
+                            for (Individual individual : gpClassifier.getParetoFront()) {
+                                paretoFront.put(programSummary(individual));
+                            }
+                            selectedProgram = programSummary(gpClassifier.getBestIndividual());
+                        }
                         break;
                         
                     case 2: // MLP
                         System.out.println("Initializing MLP Classifier with seed: " + seed);
                         MLPWrapper mlpClassifier = new MLPWrapper();
                         mlpClassifier.setSeed(seed);
-                        mlpClassifier.buildClassifier(data);
-                        
-                        // Manual cross-validation for MLP
-                        eval = new Evaluation(data);
-                        for (int i = 0; i < NUM_FOLDS; i++) {
-                            Instances train = data.trainCV(NUM_FOLDS, i, random);
-                            Instances test = data.testCV(NUM_FOLDS, i);
-                            MLPWrapper foldClassifier = new MLPWrapper();
-                            foldClassifier.buildClassifier(train);
-                            foldClassifier.batchPredict(test);
-                            
-                            // Evaluate predictions
-                            for (int j = 0; j < test.numInstances(); j++) {
-                                double predicted = foldClassifier.classifyInstance(test.instance(j));
-                                eval.evaluationForSingleInstance(new double[] {1.0 - predicted, predicted}, test.instance(j), true);
-                            }
+                        if (walkForward != null) {
+                            eval = walkForward.evaluate(mlpClassifier, data);
+                            classifierName = "MLP Classifier";
+                            modelStructure = mlpClassifier.getModelStructure();
+                            break;
                         }
+                        eval = crossValidate(mlpClassifier, data, seed, true);
+                        mlpClassifier.buildClassifier(data);
                         classifierName = "MLP Classifier";
                         modelStructure = mlpClassifier.getModelStructure();
                         break;
@@ -165,8 +218,12 @@ public class StockClassifier {
                         System.out.println("Initializing J48 Classifier with seed: " + seed);
                         J48Classifier j48Classifier = new J48Classifier();
                         j48Classifier.setSeed(seed);
-                        j48Classifier.buildClassifier(data);
-                        eval.crossValidateModel(j48Classifier, data, NUM_FOLDS, random);
+                        if (walkForward != null) {
+                            eval = walkForward.evaluate(j48Classifier, data);
+                        } else {
+                            eval = crossValidate(j48Classifier, data, seed, false);
+                            j48Classifier.buildClassifier(data);
+                        }
                         classifierName = "J48 Classifier";
                         modelStructure = j48Classifier.getModelStructure();
                         break;
@@ -194,10 +251,11 @@ public class StockClassifier {
             System.out.println("Model Structure: " + modelStructure);
             
             // Store results for statistical comparison if GP or MLP
+            String classifierKey = choice == 1 ? "GP" : choice == 2 ? "MLP" : "J48";
             if (choice == 1 || choice == 2) {
-                String resultKey = choice == 1 ? "GP" : "MLP";
-                double[] predictions = new double[data.numInstances()];
-                for (int i = 0; i < data.numInstances(); i++) {
+                String resultKey = classifierKey;
+                double[] predictions = new double[eval.predictions().size()];
+                for (int i = 0; i < predictions.length; i++) {
                     predictions[i] = eval.predictions().get(i).predicted();
                 }
                 resultsMap.put(resultKey, predictions);
@@ -222,35 +280,192 @@ public class StockClassifier {
                         "There is no statistically significant difference between the classifiers (p >= " + ALPHA + ")"));
             }
             
-            // Save results to file
-            String timestamp = java.time.LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-            String resultsPath = "results/classification_results_" + timestamp + ".txt";
+            // Append the run to the result store
+            JSONObject record = new JSONObject();
+            record.put("timestamp", System.currentTimeMillis());
+            record.put("run", runTimestamp);
+            record.put("classifier", classifierKey);
+            record.put("seed", seed);
+            record.put("dataset", trainingFile);
+            record.put("testDataset", testFile);
+            record.put("evaluation", evaluationMode == 2 ? "walk-forward-expanding"
+                : evaluationMode == 3 ? "walk-forward-sliding" : NUM_FOLDS + "-fold-cv");
+            record.put("runtimeSeconds", runtimeSeconds);
+            record.put("accuracy", eval.pctCorrect());
+            record.put("f1", eval.fMeasure(1));
+            record.put("precision", eval.precision(1));
+            record.put("recall", eval.recall(1));
+            JSONArray classLabels = new JSONArray();
+            for (int i = 0; i < data.classAttribute().numValues(); i++) {
+                classLabels.put(data.classAttribute().value(i));
+            }
+            record.put("classLabels", classLabels);
+            // confusionMatrix[actual][predicted]
+            record.put("confusionMatrix", new JSONArray(eval.confusionMatrix()));
+            record.put("modelStructure", modelStructure);
+            if (paretoFront != null) {
+                record.put("selectedProgram", selectedProgram);
+                record.put("paretoFront", paretoFront);
+            }
+            new ResultStore(RESULT_STORE).append(record);
+            System.out.println("\nResults have been appended to the result store: " + RESULT_STORE.getPath());
+
+            // Human-readable report of the same run
+            String resultsPath = "results/classification_results_" + runTimestamp + ".txt";
             try (java.io.PrintWriter writer = new java.io.PrintWriter(new java.io.FileWriter(resultsPath))) {
                 writer.println("Classification Results");
                 writer.println("====================");
                 writer.println("\nClassifier: " + classifierName);
+                writer.println("Evaluation: " + record.getString("evaluation"));
                 writer.println("Runtime: " + String.format("%.2f", runtimeSeconds) + " seconds");
                 writer.println("Accuracy: " + eval.pctCorrect());
                 writer.println("F1 Score: " + eval.fMeasure(1));
                 writer.println("Buy Precision: " + eval.precision(1));
                 writer.println("Buy Recall: " + eval.recall(1));
                 writer.println("Model Structure: " + modelStructure);
+                if (paretoFront != null) {
+                    writer.println("Selected Program: " + selectedProgram.getInt("nodes") + " nodes, training fitness "
+                        + selectedProgram.getDouble("fitness") + " (Pareto front: " + paretoFront + ")");
+                }
                 writer.println("\nConfusion Matrix:");
                 writer.println(eval.toMatrixString());
             }
-            System.out.println("\nResults have been saved to: " + resultsPath);
+            System.out.println("Results have been saved to: " + resultsPath);
             
         } catch (Exception e) {
             System.err.println("Error: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            if (PREPROCESSING_CACHE.getHits() + PREPROCESSING_CACHE.getMisses() > 0) {
+                System.out.println("[Cache] Preprocessing cache: " + PREPROCESSING_CACHE.getHits() + " hits, "
+                    + PREPROCESSING_CACHE.getMisses() + " misses");
+            }
+            Metrics.stopPeriodicExport(metricsFile);
+            if (Metrics.isEnabled()) {
+                System.out.println("Metrics snapshot saved to: " + metricsFile.getPath());
+            }
+        }
+    }
+
+    // Size and training fitness of a GP program, as stored in the result record
+    private static JSONObject programSummary(Individual individual) {
+        JSONObject summary = new JSONObject();
+        summary.put("nodes", individual.nodeCount());
+        summary.put("fitness", individual.getFitness());
+        return summary;
+    }
+
+    /**
+     * Loads a CSV or ARFF file with the class as the last attribute, converting a numeric
+     * class to nominal. Served from the preprocessing cache when the file is unchanged.
+     */
+    static Instances loadDataset(String path) throws Exception {
+        return PREPROCESSING_CACHE.load(new File(path), "class=last;NumericToNominal(class)", () -> parseDataset(path));
+    }
+
+    private static Instances parseDataset(String path) throws Exception {
+        DataSource source = new DataSource(path);
+        Instances data = source.getDataSet();
+        data.setClassIndex(data.numAttributes() - 1);
+        
+        System.out.println("Loaded " + data.numInstances() + " instances with " + data.numAttributes() + " attributes.");
+        
+        // Convert class attribute to nominal if it is numeric
+        if (data.classAttribute().isNumeric()) {
+            System.out.println("Converting class attribute from numeric to nominal...");
+            NumericToNominal convert = new NumericToNominal();
+            convert.setAttributeIndices("" + (data.classIndex() + 1)); // Weka uses 1-based indices
+            convert.setInputFormat(data);
+            data = Filter.useFilter(data, convert);
         }
+        return data;
+    }
+
+    /**
+     * Stratified k-fold cross-validation with the same folds as Evaluation.crossValidateModel,
+     * but each test fold is scored with one batch call instead of row by row. With
+     * concurrentFolds the folds are trained at once on virtual threads; meant for classifiers
+     * that mostly wait on a subprocess (the MLP), whose parallelism SubprocessRunner bounds.
+     * Predictions are recorded in fold order either way, so the result is the same. The
+     * template must not be built yet: each fold trains a serialized copy of it, and copying a
+     * built one would also copy its trained model and training data.
+     */
+    private static <T extends Classifier & BatchClassifier> Evaluation crossValidate(T template, Instances data, long seed,
+                                                                                     boolean concurrentFolds) throws Exception {
+        data = PREPROCESSING_CACHE.stratifiedFolds(data, seed, NUM_FOLDS);
+        // trainCV shuffles with the generator in the state randomize(new Random(seed)) left it
+        Random random = new Random(seed);
+        PreprocessingCache.skipShuffle(random, data.numInstances());
+        Evaluation eval = new Evaluation(data);
+        Instances[] trains = new Instances[NUM_FOLDS];
+        Instances[] tests = new Instances[NUM_FOLDS];
+        double[] foldThresholds = new double[NUM_FOLDS];
+        List<Callable<double[]>> folds = new ArrayList<>();
+        for (int i = 0; i < NUM_FOLDS; i++) {
+            final int fold = i;
+            Instances train = data.trainCV(NUM_FOLDS, i, random);
+            Instances test = data.testCV(NUM_FOLDS, i);
+            trains[i] = train;
+            tests[i] = test;
+            folds.add(() -> {
+                Classifier foldClassifier = AbstractClassifier.makeCopy(template);
+                foldClassifier.buildClassifier(train);
+                foldThresholds[fold] = ((BatchClassifier) foldClassifier).decisionThreshold();
+                try {
+                    return ((BatchClassifier) foldClassifier).distributionBatch(test);
+                } finally {
+                    if (foldClassifier instanceof MLPWrapper) {
+                        ((MLPWrapper) foldClassifier).release(); // Fold models are not reused
+                    }
+                }
+            });
+        }
+        List<double[]> foldProbabilities = new ArrayList<>();
+        if (concurrentFolds) {
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (Future<double[]> future : executor.invokeAll(folds)) {
+                    try {
+                        foldProbabilities.add(future.get());
+                    } catch (ExecutionException e) {
+                        throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                }
+            }
+        } else {
+            for (Callable<double[]> fold : folds) {
+                foldProbabilities.add(fold.call());
+            }
+        }
+        for (int i = 0; i < NUM_FOLDS; i++) {
+            eval.setPriors(trains[i]);
+            double[] probabilities = foldProbabilities.get(i);
+            for (int j = 0; j < tests[i].numInstances(); j++) {
+                recordPrediction(eval, probabilities[j], foldThresholds[i], tests[i].instance(j));
+            }
+        }
+        return eval;
+    }
+
+    /**
+     * Records a class-1 probability so that Weka's most-probable-class prediction agrees with
+     * the classifier's own decision threshold. The probability is rescaled monotonically so
+     * the threshold lands on 0.5, which leaves ranking measures such as AUC unchanged.
+     */
+    static void recordPrediction(Evaluation eval, double probability, double threshold, Instance instance) throws Exception {
+        double p;
+        if (probability > threshold) {
+            // Keeps class 1 strictly ahead even when the rescaled value rounds to 0.5
+            p = Math.max(Math.nextUp(0.5), 0.5 + 0.5 * (probability - threshold) / (1.0 - threshold));
+        } else {
+            p = threshold > 0 ? 0.5 * probability / threshold : 0.0;
+        }
+        eval.evaluateModelOnceAndRecordPrediction(new double[] {1.0 - p, p}, instance);
     }
 
     private static void runMLPClassifier(Instances trainingData, Instances testData, long seed) throws Exception {
         MLPWrapper mlp = new MLPWrapper();
         mlp.setSeed(seed);
         mlp.buildClassifier(trainingData);
-        mlp.batchPredict(testData); // Batch predict for all test instances
         System.out.println("\nMLP Classifier Results:");
         System.out.println("----------------------");
         System.out.println("Training Results:");
@@ -258,11 +473,7 @@ public class StockClassifier {
         System.out.println("\nTest Results:");
         evaluateClassifier(mlp, testData);
         // Store predictions for statistical comparison
-        double[] predictions = new double[testData.numInstances()];
-        for (int i = 0; i < testData.numInstances(); i++) {
-            predictions[i] = mlp.classifyInstance(testData.instance(i));
-        }
-        resultsMap.put("MLP", predictions);
+        resultsMap.put("MLP", mlp.classifyBatch(testData)); // Batch predict for all test instances
     }
 
     private static void evaluateClassifier(weka.classifiers.Classifier classifier, Instances data) throws Exception {
@@ -0,0 +1,70 @@
+package com.stockclassifier;
+
+import classifiers.BatchClassifier;
+import classifiers.WarmStartClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+
+/**
+ * Time-ordered evaluation: the model is trained on a window of past rows and tested on the
+ * rows that immediately follow it, then the window moves forward. Unlike shuffled k-fold
+ * cross-validation no future rows leak into training. Classifiers that support warm starts
+ * continue from the previous step's model instead of retraining from scratch.
+ */
+public class WalkForwardValidator {
+    public enum WindowType { EXPANDING, SLIDING }
+
+    private final WindowType windowType;
+    private final int numSteps;
+    private final double initialWindowFraction;
+
+    public WalkForwardValidator(WindowType windowType, int numSteps, double initialWindowFraction) {
+        this.windowType = windowType;
+        this.numSteps = numSteps;
+        this.initialWindowFraction = initialWindowFraction;
+    }
+
+    /**
+     * Runs the walk-forward evaluation over data in its stored order. The classifier is left
+     * trained on the last window.
+     */
+    public Evaluation evaluate(Classifier classifier, Instances data) throws Exception {
+        int n = data.numInstances();
+        int initialWindow = (int) Math.round(n * initialWindowFraction);
+        if (initialWindow < 1 || initialWindow >= n) {
+            throw new IllegalArgumentException("Initial window must leave rows to test on");
+        }
+        int stepSize = (int) Math.ceil((double) (n - initialWindow) / numSteps);
+
+        if (classifier instanceof WarmStartClassifier) {
+            ((WarmStartClassifier) classifier).setWarmStart(true);
+        }
+
+        Evaluation eval = new Evaluation(data);
+        int step = 0;
+        for (int end = initialWindow; end < n; end += stepSize) {
+            int start = windowType == WindowType.SLIDING ? end - initialWindow : 0;
+            int testSize = Math.min(stepSize, n - end);
+            Instances train = new Instances(data, start, end - start);
+            Instances test = new Instances(data, end, testSize);
+
+            System.out.println("[Walk-forward] Step " + (++step) + ": training on rows " + start + "-" + (end - 1)
+                + ", testing on rows " + end + "-" + (end + testSize - 1));
+            classifier.buildClassifier(train);
+            if (classifier instanceof BatchClassifier) {
+                // Score the whole test window in one call
+                double[] probabilities = ((BatchClassifier) classifier).distributionBatch(test);
+                double threshold = ((BatchClassifier) classifier).decisionThreshold();
+                for (int i = 0; i < test.numInstances(); i++) {
+                    StockClassifier.recordPrediction(eval, probabilities[i], threshold, test.instance(i));
+                }
+            } else {
+                for (int i = 0; i < test.numInstances(); i++) {
+                    eval.evaluateModelOnceAndRecordPrediction(classifier, test.instance(i));
+                }
+            }
+        }
+        return eval;
+    }
+}
@@ -0,0 +1,16 @@
+package main.java.models;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Sequential, single-consumer pass over the blocks of a BlockSource.
+ * Blocks returned by next() may be reused by the cursor on the following call.
+ */
+public interface BlockCursor extends Closeable {
+    // Returns the next block, or null when the source is exhausted
+    DataBlock next() throws IOException;
+
+    // Advances past the next block without materializing it; returns false at the end
+    boolean skip() throws IOException;
+}
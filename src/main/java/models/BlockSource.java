@@ -0,0 +1,27 @@
+package main.java.models;
+
+import java.io.IOException;
+
+/**
+ * Training data that can be read block by block, so fitness evaluation only needs one
+ * block in memory at a time.
+ */
+public interface BlockSource {
+    int numFeatures();
+
+    long numRows();
+
+    int blockSize();
+
+    BlockCursor openCursor() throws IOException;
+
+    // True when blocks are already resident, so cursors are cheap and can be opened by many
+    // threads at once
+    default boolean isInMemory() {
+        return false;
+    }
+
+    default int numBlocks() {
+        return (int) ((numRows() + blockSize() - 1) / blockSize());
+    }
+}
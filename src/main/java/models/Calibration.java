@@ -0,0 +1,209 @@
+package main.java.models;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Platt scaling of raw GP outputs into probabilities, plus the decision threshold on those
+ * probabilities that maximises training accuracy. Fitted once per model from the tree's
+ * outputs (a bounded sample of them on large data) and then applied per row at the cost of
+ * one exp(). If the fitted slope is not positive, the identity mapping is used instead.
+ */
+public class Calibration implements Serializable {
+    private static final long serialVersionUID = 1L;
+    // Raw outputs are compressed with asinh(raw - 0.5) and clamped, so huge or infinite tree
+    // outputs stay finite and the old 0.5 cut-off maps to 0
+    private static final double MAX_SCORE = 50.0;
+    private static final int MAX_ITERATIONS = 100;
+
+    private final double a;
+    private final double b;
+    private final double threshold;
+
+    public Calibration(double a, double b, double threshold) {
+        this.a = a;
+        this.b = b;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Fits the sigmoid and threshold to the first n raw outputs and their 0/1 labels.
+     */
+    public static Calibration fit(double[] raw, double[] labels, int n) {
+        double[] scores = new double[n];
+        int positives = 0;
+        for (int i = 0; i < n; i++) {
+            scores[i] = score(raw[i]);
+            if (labels[i] > 0.5) positives++;
+        }
+        int negatives = n - positives;
+        // Platt's smoothed targets keep the fit from collapsing on separable data
+        double highTarget = (positives + 1.0) / (positives + 2.0);
+        double lowTarget = 1.0 / (negatives + 2.0);
+        double[] targets = new double[n];
+        for (int i = 0; i < n; i++) {
+            targets[i] = labels[i] > 0.5 ? highTarget : lowTarget;
+        }
+
+        // Newton's method with backtracking on the cross-entropy (Lin, Lin and Weng 2007)
+        double a = 0.0;
+        double b = Math.log((positives + 1.0) / (negatives + 1.0));
+        double loss = loss(scores, targets, a, b);
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            double gradA = 0, gradB = 0, haa = 1e-12, hab = 0, hbb = 1e-12;
+            for (int i = 0; i < n; i++) {
+                double p = sigmoid(a * scores[i] + b);
+                double d = p - targets[i];
+                double w = p * (1 - p);
+                gradA += d * scores[i];
+                gradB += d;
+                haa += w * scores[i] * scores[i];
+                hab += w * scores[i];
+                hbb += w;
+            }
+            if (Math.abs(gradA) < 1e-5 && Math.abs(gradB) < 1e-5) {
+                break;
+            }
+            double det = haa * hbb - hab * hab;
+            double stepA = -(hbb * gradA - hab * gradB) / det;
+            double stepB = -(haa * gradB - hab * gradA) / det;
+            double gain = gradA * stepA + gradB * stepB;
+            double step = 1.0;
+            while (step >= 1e-10) {
+                double newLoss = loss(scores, targets, a + step * stepA, b + step * stepB);
+                if (newLoss < loss + 1e-4 * step * gain) {
+                    a += step * stepA;
+                    b += step * stepB;
+                    loss = newLoss;
+                    break;
+                }
+                step /= 2;
+            }
+            if (step < 1e-10) {
+                break;
+            }
+        }
+        if (!(a > 0)) {
+            // The outputs do not rank class 1 higher; keep the plain 0.5 cut-off instead
+            return identity();
+        }
+        return new Calibration(a, b, bestThreshold(scores, labels, a, b));
+    }
+
+    /**
+     * The uncalibrated mapping: p = sigmoid(asinh(raw - 0.5)) with threshold 0.5, which
+     * classifies exactly as raw > 0.5 did.
+     */
+    public static Calibration identity() {
+        return new Calibration(1.0, 0.0, 0.5);
+    }
+
+    // Probability that the row with this raw tree output belongs to class 1
+    public double probability(double raw) {
+        return sigmoid(a * score(raw) + b);
+    }
+
+    // Allocation-free batch form: out[i] = probability(raw[i]) for the first n rows
+    public void probabilities(double[] raw, double[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = sigmoid(a * score(raw[i]) + b);
+        }
+    }
+
+    public double classify(double raw) {
+        return probability(raw) > threshold ? 1.0 : 0.0;
+    }
+
+    public double getA() {
+        return a;
+    }
+
+    public double getB() {
+        return b;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    @Override
+    public String toString() {
+        return "p = sigmoid(" + a + " * asinh(raw - 0.5) + " + b + "), threshold " + threshold;
+    }
+
+    // NaN outputs score 0, so they fall on the same side as before calibration (class 0)
+    private static double score(double raw) {
+        double s = asinh(raw - 0.5);
+        if (Double.isNaN(s)) {
+            return 0.0;
+        }
+        return Math.max(-MAX_SCORE, Math.min(MAX_SCORE, s));
+    }
+
+    private static double asinh(double x) {
+        double ax = Math.abs(x);
+        double r = ax > 1e8 ? Math.log(ax) + Math.log(2.0) : Math.log(ax + Math.sqrt(ax * ax + 1.0));
+        return Math.copySign(r, x);
+    }
+
+    private static double sigmoid(double z) {
+        return 1.0 / (1.0 + Math.exp(-z));
+    }
+
+    private static double loss(double[] scores, double[] targets, double a, double b) {
+        double sum = 0;
+        for (int i = 0; i < scores.length; i++) {
+            double z = a * scores[i] + b;
+            sum += targets[i] * softplus(-z) + (1 - targets[i]) * softplus(z);
+        }
+        return sum;
+    }
+
+    // log(1 + e^x) without overflow
+    private static double softplus(double x) {
+        return x > 0 ? x + Math.log1p(Math.exp(-x)) : Math.log1p(Math.exp(x));
+    }
+
+    /**
+     * Threshold on the calibrated probability with the highest accuracy on the fitted rows.
+     * Starts from the probability of a raw output of 0.5, which with a > 0 is the plain 0.5
+     * cut-off, so calibration never does worse on those rows than that cut-off.
+     */
+    private static double bestThreshold(double[] scores, double[] labels, double a, double b) {
+        int n = scores.length;
+        double[] probabilities = new double[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            probabilities[i] = sigmoid(a * scores[i] + b);
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> Double.compare(probabilities[x], probabilities[y]));
+
+        double best = sigmoid(b);
+        int bestCorrect = 0;
+        for (int i = 0; i < n; i++) {
+            if ((probabilities[i] > best) == (labels[i] > 0.5)) bestCorrect++;
+        }
+        // Sweep cut points between distinct probabilities; everything above the cut is class 1
+        int correct = 0;
+        for (int i = 0; i < n; i++) {
+            if (labels[i] > 0.5) correct++;
+        }
+        if (n > 0 && correct > bestCorrect) {
+            bestCorrect = correct;
+            best = Math.nextDown(probabilities[order[0]]);
+        }
+        for (int k = 0; k < n; k++) {
+            int i = order[k];
+            correct += labels[i] > 0.5 ? -1 : 1;
+            if (k + 1 < n && probabilities[order[k + 1]] == probabilities[i]) {
+                continue;
+            }
+            if (correct > bestCorrect) {
+                bestCorrect = correct;
+                best = k + 1 < n ? (probabilities[i] + probabilities[order[k + 1]]) / 2 : probabilities[i];
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,44 @@
+package main.java.models;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed-capacity block of training rows stored column by column.
+ * columns[f][i] is feature f of row i; only the first size rows are valid.
+ */
+public class DataBlock implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public final double[][] columns;
+    public final double[] labels;
+    public int size;
+    // Identifies blocks whose contents never change, for caching subtree outputs; -1 otherwise
+    public long id = -1;
+    private static final AtomicLong nextId = new AtomicLong();
+
+    public DataBlock(int numFeatures, int capacity) {
+        this.columns = new double[numFeatures][capacity];
+        this.labels = new double[capacity];
+        this.size = 0;
+    }
+
+    // Wraps existing column arrays without copying; labels.length is taken as the capacity
+    public DataBlock(double[][] columns, double[] labels, int size) {
+        this.columns = columns;
+        this.labels = labels;
+        this.size = size;
+    }
+
+    // A process-wide unique id for a source's immutable block
+    public static long newId() {
+        return nextId.getAndIncrement();
+    }
+
+    public int numFeatures() {
+        return columns.length;
+    }
+
+    public int capacity() {
+        return labels.length;
+    }
+}
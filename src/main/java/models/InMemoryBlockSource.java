@@ -0,0 +1,108 @@
+package main.java.models;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Block source over data held on the heap in columnar blocks.
+ */
+public class InMemoryBlockSource implements WritableBlockSource, Serializable {
+    private static final long serialVersionUID = 1L;
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+    private final int numFeatures;
+    private final int blockSize;
+    // ArrayList rather than List so the serialized field type is known to be Serializable
+    private final ArrayList<DataBlock> blocks = new ArrayList<>();
+    private long numRows = 0;
+    private final boolean cacheable;
+
+    public InMemoryBlockSource(int numFeatures, int blockSize) {
+        this(numFeatures, blockSize, true);
+    }
+
+    // Short-lived sources (e.g. a per-generation subset) pass cacheable = false so their
+    // blocks never enter the semantic cache
+    public InMemoryBlockSource(int numFeatures, int blockSize, boolean cacheable) {
+        this.numFeatures = numFeatures;
+        this.blockSize = blockSize;
+        this.cacheable = cacheable;
+    }
+
+    public static InMemoryBlockSource fromDataPoints(List<Individual.DataPoint> points, int blockSize) {
+        InMemoryBlockSource source = new InMemoryBlockSource(points.get(0).features.length, blockSize);
+        for (Individual.DataPoint point : points) {
+            source.add(point.features, point.label);
+        }
+        return source;
+    }
+
+    @Override
+    public void add(double[] features, double label) {
+        DataBlock block = appendRow();
+        int row = block.size++;
+        for (int j = 0; j < numFeatures; j++) {
+            block.columns[j][row] = features[j];
+        }
+        block.labels[row] = label;
+    }
+
+    // Returns the block the next row goes into, starting a new one when the last is full
+    private DataBlock appendRow() {
+        DataBlock last = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+        if (last == null || last.size == last.capacity()) {
+            last = new DataBlock(numFeatures, blockSize);
+            if (cacheable) {
+                last.id = DataBlock.newId();
+            }
+            blocks.add(last);
+        }
+        numRows++;
+        return last;
+    }
+
+    @Override
+    public int numFeatures() {
+        return numFeatures;
+    }
+
+    @Override
+    public long numRows() {
+        return numRows;
+    }
+
+    @Override
+    public int blockSize() {
+        return blockSize;
+    }
+
+    @Override
+    public boolean isInMemory() {
+        return true;
+    }
+
+    @Override
+    public BlockCursor openCursor() {
+        return new BlockCursor() {
+            private int index = 0;
+
+            @Override
+            public DataBlock next() {
+                return index < blocks.size() ? blocks.get(index++) : null;
+            }
+
+            @Override
+            public boolean skip() {
+                if (index < blocks.size()) {
+                    index++;
+                    return true;
+                }
+                return false;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
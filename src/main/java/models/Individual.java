@@ -1,8 +1,12 @@
 package main.java.models;
 
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 // TODO: Define the structure for an individual in the GP population
@@ -12,8 +16,9 @@ public class Individual implements Serializable {
     private Node root;
     private double fitness;
     private static final int MAX_DEPTH = 5;
-    private static final String[] OPERATORS = {"+", "-", "*", "/"};
-    private static final Random random = new Random();
+    // Per-thread scratch vectors for block evaluation, MAX_ARITY - 1 per tree depth
+    private static final ThreadLocal<List<double[]>> scratchBuffers = ThreadLocal.withInitial(ArrayList::new);
+    private static final ThreadLocal<double[][]> outputBuffer = ThreadLocal.withInitial(() -> new double[1][0]);
 
     // Constructor for creating an individual
     public Individual() {
@@ -26,12 +31,16 @@ public class Individual implements Serializable {
         this.fitness = 0.0;
     }
 
-    public static Individual generateRandom(int numFeatures, Random random) {
-        Node root = generateRandomNode(0, numFeatures, random);
+    public static Individual generateRandom(int numFeatures, SplittableRandom random) {
+        return generateRandom(numFeatures, random, Operators.resolve(Operators.BASIC));
+    }
+
+    public static Individual generateRandom(int numFeatures, SplittableRandom random, Operator[] functionSet) {
+        Node root = generateRandomNode(0, numFeatures, random, functionSet);
         return new Individual(root);
     }
 
-    private static Node generateRandomNode(int depth, int numFeatures, Random random) {
+    private static Node generateRandomNode(int depth, int numFeatures, SplittableRandom random, Operator[] functionSet) {
         if (depth >= MAX_DEPTH || (depth > 0 && random.nextDouble() < 0.3)) {
             // Generate terminal node (feature or constant)
             if (random.nextDouble() < 0.5) {
@@ -43,79 +52,239 @@ public class Individual implements Serializable {
             }
         } else {
             // Generate operator node
-            String operator = OPERATORS[random.nextInt(OPERATORS.length)];
-            Node node = new Node(operator);
-            node.left = generateRandomNode(depth + 1, numFeatures, random);
-            node.right = generateRandomNode(depth + 1, numFeatures, random);
+            Operator operator = functionSet[random.nextInt(functionSet.length)];
+            Node node = new Node(operator.getSymbol());
+            for (int c = 0; c < operator.getArity(); c++) {
+                node.setChild(c, generateRandomNode(depth + 1, numFeatures, random, functionSet));
+            }
             return node;
         }
     }
 
     // Evaluates the fitness of the individual
     public double evaluate(DataPoint point) {
+        return evaluate(point.features);
+    }
+
+    /**
+     * Evaluates the tree on one row of features. Node values are parsed once and cached on
+     * the nodes, so this allocates nothing per call.
+     */
+    public double evaluate(double[] features) {
         if (root == null) {
             return 0.5; // Default prediction if no tree exists
         }
         try {
-            return evaluateNode(root, point);
+            return evaluateNode(root, features);
         } catch (Exception e) {
             System.err.println("Error evaluating node: " + e.getMessage());
             return 0.5; // Default prediction on error
         }
     }
 
-    private double evaluateNode(Node node, DataPoint point) {
+    private double evaluateNode(Node node, double[] features) {
         if (node == null) {
             return 0; // or some default value
         }
+        Compiled compiled = compile(node);
         if (node.isTerminal()) {
-            try {
-                // Try to parse as feature index
-                int featureIndex = Integer.parseInt(node.value);
-                if (featureIndex >= 0 && featureIndex < point.features.length) {
-                    return point.features[featureIndex];
-                } else {
-                    System.err.println("Feature index out of bounds: " + featureIndex + 
-                                       " (max: " + (point.features.length-1) + ")");
-                    return 0.0;
-                }
-            } catch (NumberFormatException e) {
-                try {
-                    // Try to parse as constant
-                    return Double.parseDouble(node.value);
-                } catch (NumberFormatException e2) {
-                    System.err.println("Invalid node value: " + node.value);
-                    return 0.0;
-                }
+            int featureIndex = compiled.feature;
+            if (featureIndex == Compiled.NOT_A_FEATURE) {
+                return compiled.constant;
+            }
+            if (featureIndex >= 0 && featureIndex < features.length) {
+                return features[featureIndex];
             }
+            System.err.println("Feature index out of bounds: " + featureIndex +
+                               " (max: " + (features.length-1) + ")");
+            return 0.0;
         }
         
-        // Process operators
-        double leftValue = evaluateNode(node.left, point);
-        double rightValue = evaluateNode(node.right, point);
-        
         // Check if the node value is actually an operator
-        if (node.value.equals("+")) {
-            return leftValue + rightValue;
-        } else if (node.value.equals("-")) {
-            return leftValue - rightValue;
-        } else if (node.value.equals("*")) {
-            return leftValue * rightValue;
-        } else if (node.value.equals("/")) {
-            if (Math.abs(rightValue) < 1e-10) {
-                // Avoid division by zero
-                return 1.0; 
-            }
-            return leftValue / rightValue;
+        Operator operator = compiled.operator;
+        if (operator == null) {
+            // Not a recognized operator: its value is used as a number
+            return compiled.constant;
+        }
+        int arity = operator.getArity();
+        double a = evaluateNode(node.left, features);
+        double b = arity > 1 ? evaluateNode(node.right, features) : 0.0;
+        double c = arity > 2 ? evaluateNode(node.child(2), features) : 0.0;
+        double d = arity > 3 ? evaluateNode(node.child(3), features) : 0.0;
+        return operator.apply(a, b, c, d);
+    }
+
+    // Parsed form of a node's value, rebuilt only when the value or the operator registry changes
+    private static Compiled compile(Node node) {
+        Compiled compiled = node.compiled;
+        if (compiled == null || compiled.value != node.value || compiled.version != Operators.version()) {
+            compiled = new Compiled(node.value);
+            node.compiled = compiled;
+        }
+        return compiled;
+    }
+
+    /**
+     * Evaluates the tree for every row of a block at once, writing the raw outputs into out.
+     * Produces the same values as evaluate(DataPoint) row by row, but resolves each node once
+     * per block instead of once per row.
+     */
+    public void evaluate(DataBlock block, double[] out) {
+        evaluate(block, out, null);
+    }
+
+    /**
+     * As evaluate(block, out), reusing and filling a semantic cache of subtree outputs when
+     * the block has a stable id. Unchanged subtrees copied from a parent are then looked up
+     * instead of recomputed.
+     */
+    public void evaluate(DataBlock block, double[] out, SemanticCache cache) {
+        if (root == null) {
+            Arrays.fill(out, 0, block.size, 0.5);
+            return;
+        }
+        if (cache != null && block.id >= 0) {
+            computeHashes(root);
         } else {
-            // Try to parse as a number if not a recognized operator
-            try {
-                return Double.parseDouble(node.value);
-            } catch (NumberFormatException e) {
-                System.err.println("Unknown operator: " + node.value);
-                return 0;
+            cache = null;
+        }
+        evaluateNode(root, block, out, 0, scratchBuffers.get(), cache);
+    }
+
+    // Number of rows in the block this individual classifies correctly (threshold 0.5)
+    public int countCorrect(DataBlock block) {
+        return countCorrect(block, null, 0, null);
+    }
+
+    public int countCorrect(DataBlock block, SemanticCache cache) {
+        return countCorrect(block, null, 0, cache);
+    }
+
+    // As countCorrect(block), also incrementing misses[offset + i] for each misclassified row i
+    public int countCorrect(DataBlock block, int[] misses, int offset, SemanticCache cache) {
+        double[][] holder = outputBuffer.get();
+        if (holder[0].length < block.size) {
+            holder[0] = new double[block.capacity()];
+        }
+        double[] out = holder[0];
+        evaluate(block, out, cache);
+        int correct = 0;
+        for (int i = 0; i < block.size; i++) {
+            double classifiedAs = out[i] > 0.5 ? 1.0 : 0.0;
+            if (Math.abs(classifiedAs - block.labels[i]) < 0.01) {
+                correct++;
+            } else if (misses != null) {
+                misses[offset + i]++;
+            }
+        }
+        return correct;
+    }
+
+    /**
+     * Hash of the program in canonical form: the two arguments of a commutative operator are
+     * hashed in a fixed order, so a + b and b + a (at any depth) hash alike. Equal hashes mean
+     * the same program up to argument order, which computes bit-identical outputs.
+     */
+    public long canonicalHash() {
+        return computeHashes(root);
+    }
+
+    // Canonical structural hash of every subtree, bottom-up; equal subtrees compute equal outputs
+    private static long computeHashes(Node node) {
+        if (node == null) {
+            return 0x5bd1e995L;
+        }
+        long leftHash = computeHashes(node.left);
+        long rightHash = computeHashes(node.right);
+        Operator operator = node.isTerminal() ? null : compile(node).operator;
+        if (operator != null && operator.isCommutative() && leftHash > rightHash) {
+            long swap = leftHash;
+            leftHash = rightHash;
+            rightHash = swap;
+        }
+        long h = hash64(node.value) * 0x9e3779b97f4a7c15L;
+        h = (h ^ leftHash) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 29) ^ rightHash) * 0x94d049bb133111ebL;
+        if (node.extra != null) {
+            for (Node child : node.extra) {
+                h = (h ^ (h >>> 29) ^ computeHashes(child)) * 0x94d049bb133111ebL;
             }
         }
+        node.hash = h ^ (h >>> 31);
+        return node.hash;
+    }
+
+    // 64-bit FNV-1a; String.hashCode is too collision-prone for distinct constants
+    private static long hash64(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private void evaluateNode(Node node, DataBlock block, double[] out, int depth, List<double[]> scratch, SemanticCache cache) {
+        int n = block.size;
+        if (node == null) {
+            Arrays.fill(out, 0, n, 0.0);
+            return;
+        }
+        // Terminals are as cheap to load as a cached vector, so only operators are cached
+        long cacheKey = 0;
+        if (cache != null && !node.isTerminal()) {
+            cacheKey = SemanticCache.key(node.hash, block.id);
+            double[] cached = cache.get(cacheKey);
+            if (cached != null) {
+                System.arraycopy(cached, 0, out, 0, n);
+                return;
+            }
+        }
+        Compiled compiled = compile(node);
+        if (node.isTerminal()) {
+            int featureIndex = compiled.feature;
+            if (featureIndex == Compiled.NOT_A_FEATURE) {
+                Arrays.fill(out, 0, n, compiled.constant);
+            } else if (featureIndex >= 0 && featureIndex < block.numFeatures()) {
+                System.arraycopy(block.columns[featureIndex], 0, out, 0, n);
+            } else {
+                System.err.println("Feature index out of bounds: " + featureIndex +
+                                   " (max: " + (block.numFeatures() - 1) + ")");
+                Arrays.fill(out, 0, n, 0.0);
+            }
+            return;
+        }
+
+        Operator operator = compiled.operator;
+        if (operator == null) {
+            // Not an operator: treated as a constant, as in the row-wise evaluator
+            Arrays.fill(out, 0, n, compiled.constant);
+        } else {
+            // The first argument is computed in place; the others in this depth's scratch vectors
+            int arity = operator.getArity();
+            evaluateNode(node.left, block, out, depth + 1, scratch, cache);
+            double[] b = arity > 1 ? evaluateArgument(node.right, block, depth, 0, scratch, cache) : null;
+            double[] c = arity > 2 ? evaluateArgument(node.child(2), block, depth, 1, scratch, cache) : null;
+            double[] d = arity > 3 ? evaluateArgument(node.child(3), block, depth, 2, scratch, cache) : null;
+            operator.apply(out, b, c, d, out, n);
+        }
+        if (cache != null) {
+            cache.put(cacheKey, Arrays.copyOf(out, n));
+        }
+    }
+
+    private double[] evaluateArgument(Node child, DataBlock block, int depth, int index, List<double[]> scratch, SemanticCache cache) {
+        int slot = depth * (Operators.MAX_ARITY - 1) + index;
+        while (scratch.size() <= slot) {
+            scratch.add(new double[0]);
+        }
+        double[] vector = scratch.get(slot);
+        if (vector.length < block.size) {
+            vector = new double[block.capacity()];
+            scratch.set(slot, vector);
+        }
+        evaluateNode(child, block, vector, depth + 1, scratch, cache);
+        return vector;
     }
 
     // Getter for fitness
@@ -143,7 +312,14 @@ public class Individual implements Serializable {
         return new Individual(root != null ? root.deepCopy() : null);
     }
 
-    public Node getRandomNode(Random random) {
+    // Number of nodes in the tree; each one is evaluated once per row
+    public int nodeCount() {
+        List<Node> nodes = new ArrayList<>();
+        collectNodes(root, nodes);
+        return nodes.size();
+    }
+
+    public Node getRandomNode(SplittableRandom random) {
         List<Node> nodes = new ArrayList<>();
         collectNodes(root, nodes);
         if (nodes.isEmpty()) {
@@ -157,6 +333,11 @@ public class Individual implements Serializable {
         nodes.add(node);
         collectNodes(node.left, nodes);
         collectNodes(node.right, nodes);
+        if (node.extra != null) {
+            for (Node child : node.extra) {
+                collectNodes(child, nodes);
+            }
+        }
     }
 
     @Override
@@ -164,6 +345,73 @@ public class Individual implements Serializable {
         return root != null ? root.toString() : "Empty";
     }
 
+    // Tags of the compact tree encoding used by checkpoints
+    private static final int NULL_NODE = 0;
+    private static final int FEATURE_NODE = 1;
+    private static final int CONSTANT_NODE = 2;
+    private static final int OTHER_NODE = 3;
+
+    /**
+     * Writes a tree in pre-order: per node a tag, its value (feature indexes as ints and
+     * constants as raw doubles when they print back identically, anything else as a string),
+     * the number of extra children, then the children.
+     */
+    public static void writeTree(Node node, DataOutput out) throws IOException {
+        if (node == null) {
+            out.writeByte(NULL_NODE);
+            return;
+        }
+        Compiled compiled = compile(node);
+        if (compiled.feature != Compiled.NOT_A_FEATURE && String.valueOf(compiled.feature).equals(node.value)) {
+            out.writeByte(FEATURE_NODE);
+            out.writeInt(compiled.feature);
+        } else if (compiled.operator == null && String.valueOf(compiled.constant).equals(node.value)) {
+            out.writeByte(CONSTANT_NODE);
+            out.writeDouble(compiled.constant);
+        } else {
+            out.writeByte(OTHER_NODE);
+            out.writeUTF(node.value);
+        }
+        out.writeByte(node.extra != null ? node.extra.length : 0);
+        writeTree(node.left, out);
+        writeTree(node.right, out);
+        if (node.extra != null) {
+            for (Node child : node.extra) {
+                writeTree(child, out);
+            }
+        }
+    }
+
+    public static Node readTree(DataInput in) throws IOException {
+        int tag = in.readByte();
+        Node node;
+        switch (tag) {
+            case NULL_NODE:
+                return null;
+            case FEATURE_NODE:
+                node = new Node(String.valueOf(in.readInt()));
+                break;
+            case CONSTANT_NODE:
+                node = new Node(String.valueOf(in.readDouble()));
+                break;
+            case OTHER_NODE:
+                node = new Node(in.readUTF());
+                break;
+            default:
+                throw new IOException("Corrupt tree encoding: unknown node tag " + tag);
+        }
+        int extra = in.readByte();
+        node.left = readTree(in);
+        node.right = readTree(in);
+        if (extra > 0) {
+            node.extra = new Node[extra];
+            for (int i = 0; i < extra; i++) {
+                node.extra[i] = readTree(in);
+            }
+        }
+        return node;
+    }
+
     // DataPoint class for representing training and testing data
     public static class DataPoint implements Serializable {
         private static final long serialVersionUID = 1L;
@@ -176,11 +424,54 @@ public class Individual implements Serializable {
         }
     }
 
+    /**
+     * A node value parsed once: a feature index for terminals that are integers, an operator,
+     * or otherwise a constant. Immutable, so nodes can share it between threads.
+     */
+    static final class Compiled {
+        static final int NOT_A_FEATURE = Integer.MIN_VALUE;
+        final String value;
+        // Operators.version() when parsed; a newer registry means re-resolving the operator
+        final int version;
+        final Operator operator;
+        final int feature;
+        // Used when the value is neither a feature nor an operator (0 for a childless operator)
+        final double constant;
+
+        Compiled(String value) {
+            this.value = value;
+            this.version = Operators.version();
+            this.operator = Operators.get(value);
+            int featureIndex;
+            try {
+                featureIndex = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                featureIndex = NOT_A_FEATURE;
+            }
+            this.feature = featureIndex;
+            double number = 0.0;
+            if (operator == null) {
+                try {
+                    number = Double.parseDouble(value);
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid node value: " + value);
+                }
+            }
+            this.constant = number;
+        }
+    }
+
     public static class Node implements Serializable {
         private static final long serialVersionUID = 1L;
         public String value;
         public Node left;
         public Node right;
+        // Children beyond the second, for operators with arity above 2
+        public Node[] extra;
+        // Structural hash, refreshed before each cached evaluation
+        transient long hash;
+        // Parsed value, so evaluation never re-parses strings
+        transient Compiled compiled;
 
         public Node(String value) {
             this.value = value;
@@ -189,13 +480,39 @@ public class Individual implements Serializable {
         }
 
         public boolean isTerminal() {
-            return left == null && right == null;
+            return left == null && right == null && extra == null;
+        }
+
+        // The index-th argument: left, right, then the extra children
+        public Node child(int index) {
+            if (index == 0) return left;
+            if (index == 1) return right;
+            return extra != null && index - 2 < extra.length ? extra[index - 2] : null;
+        }
+
+        public void setChild(int index, Node child) {
+            if (index == 0) {
+                left = child;
+            } else if (index == 1) {
+                right = child;
+            } else {
+                if (extra == null || extra.length < index - 1) {
+                    extra = extra == null ? new Node[index - 1] : Arrays.copyOf(extra, index - 1);
+                }
+                extra[index - 2] = child;
+            }
         }
 
         public Node deepCopy() {
             Node copy = new Node(value);
             if (left != null) copy.left = left.deepCopy();
             if (right != null) copy.right = right.deepCopy();
+            if (extra != null) {
+                copy.extra = new Node[extra.length];
+                for (int i = 0; i < extra.length; i++) {
+                    if (extra[i] != null) copy.extra[i] = extra[i].deepCopy();
+                }
+            }
             return copy;
         }
 
@@ -204,7 +521,17 @@ public class Individual implements Serializable {
             if (isTerminal()) {
                 return value;
             }
-            
+
+            // Binary operators print infix; the others as a function call
+            Operator operator = Operators.get(value);
+            if (operator != null && operator.getArity() != 2) {
+                StringBuilder sb = new StringBuilder(value).append('(');
+                for (int i = 0; i < operator.getArity(); i++) {
+                    Node child = child(i);
+                    sb.append(i > 0 ? ", " : "").append(child != null ? child.toString() : "null");
+                }
+                return sb.append(')').toString();
+            }
             String leftStr = left != null ? left.toString() : "null";
             String rightStr = right != null ? right.toString() : "null";
             return "(" + leftStr + " " + value + " " + rightStr + ")";
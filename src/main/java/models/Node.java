@@ -2,14 +2,12 @@ package models;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 
 // TODO: Define the structure for a node in the GP program tree
 public class Node {
     private String type; // e.g., "operator", "terminal_feature", "terminal_constant"
     private String value; // e.g., "+", "feature1", "0.5"
     private List<Node> children;
-    private static Random random = new Random();
 
     // Constructor for a node
     public Node(String type, String value) {
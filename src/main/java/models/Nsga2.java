@@ -0,0 +1,162 @@
+package main.java.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Non-dominated sorting and crowding distance from NSGA-II (Deb et al. 2002). Objectives are
+ * given as objectives[individual][objective] and are all minimised.
+ */
+public final class Nsga2 {
+    private Nsga2() {
+    }
+
+    // True when a is no worse than b in every objective and strictly better in at least one
+    public static boolean dominates(double[] a, double[] b) {
+        boolean better = false;
+        for (int m = 0; m < a.length; m++) {
+            if (a[m] > b[m]) {
+                return false;
+            }
+            if (a[m] < b[m]) {
+                better = true;
+            }
+        }
+        return better;
+    }
+
+    /**
+     * Splits the individuals into fronts, best first; rank[i] receives the front index of i.
+     * Indices within a front are in ascending order.
+     */
+    public static List<int[]> sort(double[][] objectives, int[] rank) {
+        int n = objectives.length;
+        int[] dominatedBy = new int[n];
+        List<List<Integer>> dominates = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            dominates.add(new ArrayList<>());
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if (dominates(objectives[i], objectives[j])) {
+                    dominates.get(i).add(j);
+                    dominatedBy[j]++;
+                } else if (dominates(objectives[j], objectives[i])) {
+                    dominates.get(j).add(i);
+                    dominatedBy[i]++;
+                }
+            }
+        }
+
+        List<int[]> fronts = new ArrayList<>();
+        int[] current = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (dominatedBy[i] == 0) {
+                current[count++] = i;
+            }
+        }
+        while (count > 0) {
+            int[] front = Arrays.copyOf(current, count);
+            Arrays.sort(front);
+            for (int i : front) {
+                rank[i] = fronts.size();
+            }
+            fronts.add(front);
+            count = 0;
+            for (int i : front) {
+                for (int j : dominates.get(i)) {
+                    if (--dominatedBy[j] == 0) {
+                        current[count++] = j;
+                    }
+                }
+            }
+        }
+        return fronts;
+    }
+
+    /**
+     * Writes the crowding distance of each member of a front into distance[index]; the
+     * extremes of every objective get infinity so they are always kept.
+     */
+    public static void crowding(double[][] objectives, int[] front, double[] distance) {
+        for (int i : front) {
+            distance[i] = 0.0;
+        }
+        if (front.length <= 2) {
+            for (int i : front) {
+                distance[i] = Double.POSITIVE_INFINITY;
+            }
+            return;
+        }
+        Integer[] order = new Integer[front.length];
+        for (int m = 0; m < objectives[front[0]].length; m++) {
+            final int objective = m;
+            for (int k = 0; k < front.length; k++) {
+                order[k] = front[k];
+            }
+            Arrays.sort(order, (a, b) -> objectives[a][objective] != objectives[b][objective]
+                ? Double.compare(objectives[a][objective], objectives[b][objective])
+                : Integer.compare(a, b));
+            double min = objectives[order[0]][m];
+            double max = objectives[order[front.length - 1]][m];
+            distance[order[0]] = Double.POSITIVE_INFINITY;
+            distance[order[front.length - 1]] = Double.POSITIVE_INFINITY;
+            if (max == min) {
+                continue;
+            }
+            for (int k = 1; k < front.length - 1; k++) {
+                distance[order[k]] += (objectives[order[k + 1]][m] - objectives[order[k - 1]][m]) / (max - min);
+            }
+        }
+    }
+
+    /**
+     * Picks the count survivors: whole fronts while they fit, then the least crowded members
+     * of the first front that does not. Individuals whose objectives duplicate an earlier
+     * survivor's are only taken once every distinct point has been, which keeps copies of
+     * one small program from filling the population. Fills rank and distance for every
+     * individual and returns the survivors' indices in order of preference.
+     */
+    public static int[] select(double[][] objectives, int count, int[] rank, double[] distance) {
+        List<int[]> fronts = sort(objectives, rank);
+        int[] survivors = new int[Math.min(count, objectives.length)];
+        int filled = 0;
+        List<Integer> duplicates = new ArrayList<>();
+        Set<List<Double>> taken = new HashSet<>();
+        for (int[] front : fronts) {
+            crowding(objectives, front, distance);
+            if (filled >= survivors.length) {
+                continue;
+            }
+            Integer[] order = new Integer[front.length];
+            for (int k = 0; k < front.length; k++) {
+                order[k] = front[k];
+            }
+            Arrays.sort(order, (a, b) -> distance[a] != distance[b] ? Double.compare(distance[b], distance[a]) : Integer.compare(a, b));
+            for (int k = 0; k < order.length && filled < survivors.length; k++) {
+                List<Double> point = new ArrayList<>();
+                for (double value : objectives[order[k]]) {
+                    point.add(value);
+                }
+                if (taken.add(point)) {
+                    survivors[filled++] = order[k];
+                } else {
+                    duplicates.add(order[k]);
+                }
+            }
+        }
+        for (int k = 0; k < duplicates.size() && filled < survivors.length; k++) {
+            survivors[filled++] = duplicates.get(k);
+        }
+        return survivors;
+    }
+
+    // Crowded-comparison: lower rank wins, then larger crowding distance
+    public static boolean crowdedBetter(int rankA, double distanceA, int rankB, double distanceB) {
+        return rankA < rankB || (rankA == rankB && distanceA > distanceB);
+    }
+}
@@ -0,0 +1,161 @@
+package main.java.models;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Block source that keeps the training data outside the garbage-collected heap. Each block
+ * is one direct buffer holding its feature columns one after another, then its labels.
+ * Cursors copy one block at a time into a heap DataBlock they reuse, so however large the
+ * data is the heap only holds one block per open cursor, and collections only ever see the
+ * tree churn. Blocks keep stable ids, so the semantic cache still applies.
+ */
+public class OffHeapBlockSource implements WritableBlockSource, Serializable {
+    private static final long serialVersionUID = 1L;
+    private final int numFeatures;
+    private final int blockSize;
+    private transient List<DoubleBuffer> blocks = new ArrayList<>();
+    private transient List<Long> ids = new ArrayList<>();
+    private long numRows = 0;
+
+    public OffHeapBlockSource(int numFeatures, int blockSize) {
+        this.numFeatures = numFeatures;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Copies every row of another source (e.g. a CsvBlockSource) off the heap.
+     */
+    public static OffHeapBlockSource copyOf(BlockSource source) throws IOException {
+        OffHeapBlockSource copy = new OffHeapBlockSource(source.numFeatures(), source.blockSize());
+        double[] features = new double[source.numFeatures()];
+        try (BlockCursor cursor = source.openCursor()) {
+            DataBlock block;
+            while ((block = cursor.next()) != null) {
+                for (int i = 0; i < block.size; i++) {
+                    for (int f = 0; f < features.length; f++) {
+                        features[f] = block.columns[f][i];
+                    }
+                    copy.add(features, block.labels[i]);
+                }
+            }
+        }
+        return copy;
+    }
+
+    @Override
+    public void add(double[] features, double label) {
+        int row = (int) (numRows % blockSize);
+        if (row == 0) {
+            blocks.add(ByteBuffer.allocateDirect(Double.BYTES * (numFeatures + 1) * blockSize)
+                .order(ByteOrder.nativeOrder()).asDoubleBuffer());
+            ids.add(DataBlock.newId());
+        }
+        DoubleBuffer block = blocks.get(blocks.size() - 1);
+        for (int f = 0; f < numFeatures; f++) {
+            block.put(f * blockSize + row, features[f]);
+        }
+        block.put(numFeatures * blockSize + row, label);
+        numRows++;
+    }
+
+    // Bytes held outside the heap
+    public long offHeapBytes() {
+        return (long) blocks.size() * Double.BYTES * (numFeatures + 1) * blockSize;
+    }
+
+    @Override
+    public int numFeatures() {
+        return numFeatures;
+    }
+
+    @Override
+    public long numRows() {
+        return numRows;
+    }
+
+    @Override
+    public int blockSize() {
+        return blockSize;
+    }
+
+    @Override
+    public BlockCursor openCursor() {
+        return new BlockCursor() {
+            private DataBlock block;
+            private int index = 0;
+
+            @Override
+            public DataBlock next() {
+                if (index >= blocks.size()) {
+                    return null;
+                }
+                if (block == null) {
+                    block = new DataBlock(numFeatures, blockSize);
+                }
+                DoubleBuffer data = blocks.get(index);
+                int size = (int) Math.min(blockSize, numRows - (long) index * blockSize);
+                // Absolute bulk reads leave the buffer's position alone, so cursors can run concurrently
+                for (int f = 0; f < numFeatures; f++) {
+                    data.get(f * blockSize, block.columns[f], 0, size);
+                }
+                data.get(numFeatures * blockSize, block.labels, 0, size);
+                block.size = size;
+                block.id = ids.get(index);
+                index++;
+                return block;
+            }
+
+            @Override
+            public boolean skip() {
+                if (index < blocks.size()) {
+                    index++;
+                    return true;
+                }
+                return false;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    // Direct buffers are not serializable; write the rows and rebuild the buffers on read
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        try (BlockCursor cursor = openCursor()) {
+            DataBlock block;
+            while ((block = cursor.next()) != null) {
+                for (int i = 0; i < block.size; i++) {
+                    for (int f = 0; f < numFeatures; f++) {
+                        out.writeDouble(block.columns[f][i]);
+                    }
+                    out.writeDouble(block.labels[i]);
+                }
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        long rows = numRows;
+        numRows = 0;
+        blocks = new ArrayList<>();
+        ids = new ArrayList<>();
+        double[] features = new double[numFeatures];
+        for (long r = 0; r < rows; r++) {
+            for (int f = 0; f < numFeatures; f++) {
+                features[f] = in.readDouble();
+            }
+            add(features, in.readDouble());
+        }
+    }
+}
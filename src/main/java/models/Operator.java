@@ -0,0 +1,47 @@
+package main.java.models;
+
+/**
+ * A GP function: its symbol, arity and how it combines its arguments. Subclasses implement the
+ * scalar form and, for speed, may override the vector form with a tight loop.
+ * Implementations must be "protected": defined (finite where possible) for every input.
+ */
+public abstract class Operator {
+    private final String symbol;
+    private final int arity;
+    private final boolean commutative;
+
+    protected Operator(String symbol, int arity, boolean commutative) {
+        if (arity < 1 || arity > Operators.MAX_ARITY) {
+            throw new IllegalArgumentException("Arity must be between 1 and " + Operators.MAX_ARITY);
+        }
+        this.symbol = symbol;
+        this.arity = arity;
+        this.commutative = commutative;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public int getArity() {
+        return arity;
+    }
+
+    // True when the order of the (two) arguments does not change the result
+    public boolean isCommutative() {
+        return commutative;
+    }
+
+    // Scalar form; arguments beyond the arity are 0
+    public abstract double apply(double a, double b, double c, double d);
+
+    /**
+     * Vector form over the first n rows. Arguments beyond the arity are null, and out may be
+     * the same array as a.
+     */
+    public void apply(double[] a, double[] b, double[] c, double[] d, double[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = apply(a[i], b != null ? b[i] : 0.0, c != null ? c[i] : 0.0, d != null ? d[i] : 0.0);
+        }
+    }
+}
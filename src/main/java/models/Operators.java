@@ -0,0 +1,191 @@
+package main.java.models;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of GP functions by symbol. The built-ins cover arithmetic, comparisons and
+ * squashing functions; new ones can be added with register(). The built-ins' block loops
+ * can be switched to SIMD with setVectorBackend or -Dgp.vector=true.
+ */
+public final class Operators {
+    public static final int MAX_ARITY = 4;
+    // Divisors smaller than this in magnitude make "/" return 1.0
+    public static final double PROTECTED_DIVISION_EPSILON = 1e-10;
+
+    // The original function set, and the one including the comparison and squashing functions
+    public static final String[] BASIC = {"+", "-", "*", "/"};
+    public static final String[] EXTENDED = {"+", "-", "*", "/", "min", "max", "ifgt", "abs", "tanh", "sigmoid"};
+
+    private static final Map<String, Operator> registry = new ConcurrentHashMap<>();
+    // Bumped by every register() so parsed nodes pick up replaced operators
+    private static volatile int version;
+    private static boolean vectorBackend;
+
+    static {
+        registerScalarBuiltIns();
+        if (Boolean.getBoolean("gp.vector")) {
+            setVectorBackend(true);
+        }
+    }
+
+    private static void registerScalarBuiltIns() {
+        register(new Operator("+", 2, true) {
+            public double apply(double a, double b, double c, double d) {
+                return a + b;
+            }
+
+            public void apply(double[] a, double[] b, double[] c, double[] d, double[] out, int n) {
+                for (int i = 0; i < n; i++) out[i] = a[i] + b[i];
+            }
+        });
+        register(new Operator("-", 2, false) {
+            public double apply(double a, double b, double c, double d) {
+                return a - b;
+            }
+
+            public void apply(double[] a, double[] b, double[] c, double[] d, double[] out, int n) {
+                for (int i = 0; i < n; i++) out[i] = a[i] - b[i];
+            }
+        });
+        register(new Operator("*", 2, true) {
+            public double apply(double a, double b, double c, double d) {
+                return a * b;
+            }
+
+            public void apply(double[] a, double[] b, double[] c, double[] d, double[] out, int n) {
+                for (int i = 0; i < n; i++) out[i] = a[i] * b[i];
+            }
+        });
+        register(new Operator("/", 2, false) {
+            public double apply(double a, double b, double c, double d) {
+                // Avoid division by zero
+                return Math.abs(b) < PROTECTED_DIVISION_EPSILON ? 1.0 : a / b;
+            }
+
+            public void apply(double[] a, double[] b, double[] c, double[] d, double[] out, int n) {
+                for (int i = 0; i < n; i++) out[i] = Math.abs(b[i]) < PROTECTED_DIVISION_EPSILON ? 1.0 : a[i] / b[i];
+            }
+        });
+        register(new Operator("min", 2, true) {
+            public double apply(double a, double b, double c, double d) {
+                return Math.min(a, b);
+            }
+
+            public void apply(double[] a, double[] b, double[] c, double[] d, double[] out, int n) {
+                for (int i = 0; i < n; i++) out[i] = Math.min(a[i], b[i]);
+            }
+        });
+        register(new Operator("max", 2, true) {
+            public double apply(double a, double b, double c, double d) {
+                return Math.max(a, b);
+            }
+
+            public void apply(double[] a, double[] b, double[] c, double[] d, double[] out, int n) {
+                for (int i = 0; i < n; i++) out[i] = Math.max(a[i], b[i]);
+            }
+        });
+        // if a > b then c else d
+        register(new Operator("ifgt", 4, false) {
+            public double apply(double a, double b, double c, double d) {
+                return a > b ? c : d;
+            }
+
+            public void apply(double[] a, double[] b, double[] c, double[] d, double[] out, int n) {
+                for (int i = 0; i < n; i++) out[i] = a[i] > b[i] ? c[i] : d[i];
+            }
+        });
+        register(new Operator("abs", 1, false) {
+            public double apply(double a, double b, double c, double d) {
+                return Math.abs(a);
+            }
+
+            public void apply(double[] a, double[] b, double[] c, double[] d, double[] out, int n) {
+                for (int i = 0; i < n; i++) out[i] = Math.abs(a[i]);
+            }
+        });
+        register(new Operator("tanh", 1, false) {
+            public double apply(double a, double b, double c, double d) {
+                return Math.tanh(a);
+            }
+
+            public void apply(double[] a, double[] b, double[] c, double[] d, double[] out, int n) {
+                for (int i = 0; i < n; i++) out[i] = Math.tanh(a[i]);
+            }
+        });
+        register(new Operator("sigmoid", 1, false) {
+            public double apply(double a, double b, double c, double d) {
+                return 1.0 / (1.0 + Math.exp(-a));
+            }
+
+            public void apply(double[] a, double[] b, double[] c, double[] d, double[] out, int n) {
+                for (int i = 0; i < n; i++) out[i] = 1.0 / (1.0 + Math.exp(-a[i]));
+            }
+        });
+    }
+
+    private Operators() {
+    }
+
+    public static synchronized void register(Operator operator) {
+        registry.put(operator.getSymbol(), operator);
+        version++;
+    }
+
+    static int version() {
+        return version;
+    }
+
+    /**
+     * Switches the built-in operators between plain loops and SIMD loops over DoubleVector
+     * lanes. The vector backend needs the JVM to run with --add-modules jdk.incubator.vector;
+     * without it this prints a note and keeps the scalar loops. Both backends produce
+     * the same values (NaN payloads aside). Returns whether the vector backend is now active.
+     */
+    public static synchronized boolean setVectorBackend(boolean enabled) {
+        if (!enabled) {
+            if (vectorBackend) {
+                registerScalarBuiltIns();
+                vectorBackend = false;
+            }
+            return false;
+        }
+        if (vectorBackend) {
+            return true;
+        }
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            System.out.println("[GP] jdk.incubator.vector is not available (run with --add-modules jdk.incubator.vector); using scalar evaluation.");
+            return false;
+        }
+        try {
+            // Loaded reflectively so the class never links without the module
+            Class.forName("main.java.models.VectorizedOperators").getDeclaredMethod("registerAll").invoke(null);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.out.println("[GP] Vector backend unavailable (" + e + "); using scalar evaluation.");
+            registerScalarBuiltIns();
+            return false;
+        }
+        vectorBackend = true;
+        return true;
+    }
+
+    public static synchronized boolean isVectorBackend() {
+        return vectorBackend;
+    }
+
+    // Returns the operator for a node value, or null if the value is not a registered symbol
+    public static Operator get(String symbol) {
+        return registry.get(symbol);
+    }
+
+    public static Operator[] resolve(String[] symbols) {
+        Operator[] operators = new Operator[symbols.length];
+        for (int i = 0; i < symbols.length; i++) {
+            operators[i] = registry.get(symbols[i]);
+            if (operators[i] == null) {
+                throw new IllegalArgumentException("Unknown GP operator: " + symbols[i]);
+            }
+        }
+        return operators;
+    }
+}
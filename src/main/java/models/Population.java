@@ -2,135 +2,1024 @@ package main.java.models;
 
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import utils.Metrics;
 
 public class Population implements Serializable {
     private static final long serialVersionUID = 1L;
     private List<Individual> individuals;
-    private List<Individual.DataPoint> trainingData;
-    private Random random;
+    private BlockSource trainingData;
+    private RandomStreams streams;
     private Individual bestIndividual;
+    // Fraction of blocks scored per generation; 1.0 evaluates on every row
+    private double sampleFraction = 1.0;
+
+    public enum SubsetStrategy { RANDOM, INTERLEAVED, DYNAMIC }
+    private static final double DIFFICULTY_EXPONENT = 1.0;
+    private static final double AGE_EXPONENT = 3.0;
+    private SubsetStrategy subsetStrategy = null;
+    private int subsetSize;
+    private int eliteSize = 5;
+    private int[] difficulty;
+    private int[] age;
+    private int generation = 0;
+    private double lastSubsetBestFitness;
+    private long rowEvaluations = 0;
+    private long fullRowEvaluations = 0;
+    // Worker threads for breeding and evaluation; results do not depend on the count
+    private int threads = 1;
+    private transient ForkJoinPool pool;
+    private transient SemanticCache semanticCache;
+    // Operator symbols used to grow random trees; resolved through the Operators registry
+    private String[] functionSet;
+    private transient Operator[] operators;
+    // NSGA-II mode: accuracy and node count are optimised together
+    private boolean multiObjective = false;
+    private int[] rank;
+    private double[] crowding;
+    // Racing: offspring stop being scored once they cannot reach the parents' quantile fitness
+    private boolean racing = false;
+    private double racingQuantile;
+    private double racingDelta;
+    private long racingRowsSaved = 0;
+    private long lastRacingRowsSaved = 0;
+    private int lastRacedIndividuals = 0;
+
+    public enum DuplicateStrategy { REPLACE, SKIP }
+    // Fresh programs tried per duplicate before it is kept as it is
+    private static final int MAX_REPLACEMENT_ATTEMPTS = 8;
+    private DuplicateStrategy duplicateStrategy = null;
+    private int lastUniquePrograms;
+    private int lastDuplicates;
+
+    public Population(int size, List<Individual.DataPoint> trainingData, long seed) {
+        this(size, trainingData, seed, new ArrayList<>());
+    }
+
+    // Creates a population that starts from copies of the given individuals (e.g. the best of a
+    // previous run) and fills the remaining slots with random individuals
+    public Population(int size, List<Individual.DataPoint> trainingData, long seed, List<Individual> seeds) {
+        this(size, InMemoryBlockSource.fromDataPoints(trainingData, InMemoryBlockSource.DEFAULT_BLOCK_SIZE), seed, seeds);
+    }
+
+    public Population(int size, BlockSource trainingData, long seed, List<Individual> seeds) {
+        this(size, trainingData, seed, seeds, Operators.BASIC);
+    }
+
+    public Population(int size, BlockSource trainingData, long seed, List<Individual> seeds, String[] functionSet) {
+        this(trainingData, seed, functionSet);
+        for (int i = 0; i < seeds.size() && i < size; i++) {
+            individuals.add(seeds.get(i).deepCopy());
+        }
 
-    public Population(int size, List<Individual.DataPoint> trainingData, Random random) {
-        this.trainingData = trainingData;
-        this.random = random;
-        this.individuals = new ArrayList<>();
-        
         // Initialize population with random individuals
-        for (int i = 0; i < size; i++) {
-            individuals.add(Individual.generateRandom(trainingData.get(0).features.length, random));
+        for (int i = individuals.size(); i < size; i++) {
+            individuals.add(Individual.generateRandom(trainingData.numFeatures(), streams.forSlot(0, i), operators));
         }
         
         // Evaluate initial population
-        evaluatePopulation();
+        evaluatePopulation(Double.NEGATIVE_INFINITY, null);
+    }
+
+    // An empty, unevaluated population; filled by the public constructors or readState
+    private Population(BlockSource trainingData, long seed, String[] functionSet) {
+        if (trainingData.numRows() == 0) {
+            throw new IllegalArgumentException("Training data is empty");
+        }
+        this.trainingData = trainingData;
+        this.streams = new RandomStreams(seed);
+        this.functionSet = functionSet.clone();
+        this.operators = Operators.resolve(functionSet);
+        this.individuals = new ArrayList<>();
+    }
+
+    /**
+     * Writes everything evolve() depends on: the individuals and their fitness, the best
+     * individual, the generation counter (all random streams derive from the seed and the
+     * generation, so this is the RNG state) and the subset and NSGA-II bookkeeping. Settings
+     * made through setters are not included.
+     */
+    public void writeState(DataOutput out) throws IOException {
+        out.writeInt(functionSet.length);
+        for (String symbol : functionSet) {
+            out.writeUTF(symbol);
+        }
+        out.writeInt(generation);
+        out.writeDouble(lastSubsetBestFitness);
+        out.writeLong(rowEvaluations);
+        out.writeLong(fullRowEvaluations);
+        out.writeLong(racingRowsSaved);
+        out.writeInt(individuals.size());
+        int bestIndex = -1;
+        for (int i = 0; i < individuals.size(); i++) {
+            Individual individual = individuals.get(i);
+            if (individual == bestIndividual) {
+                bestIndex = i;
+            }
+            out.writeDouble(individual.getFitness());
+            Individual.writeTree(individual.getRoot(), out);
+        }
+        out.writeInt(bestIndex);
+        if (bestIndex < 0) {
+            out.writeBoolean(bestIndividual != null);
+            if (bestIndividual != null) {
+                out.writeDouble(bestIndividual.getFitness());
+                Individual.writeTree(bestIndividual.getRoot(), out);
+            }
+        }
+        writeInts(difficulty, out);
+        writeInts(age, out);
+        writeInts(rank, out);
+        out.writeInt(crowding != null ? crowding.length : -1);
+        if (crowding != null) {
+            for (double distance : crowding) {
+                out.writeDouble(distance);
+            }
+        }
+    }
+
+    /**
+     * Recreates a population saved by writeState over the same training data and seed. The
+     * result evolves exactly as the saved population would have; setters still need to be
+     * applied again, and keep the restored subset and NSGA-II state.
+     */
+    public static Population readState(BlockSource trainingData, long seed, DataInput in) throws IOException {
+        String[] functionSet = new String[in.readInt()];
+        for (int i = 0; i < functionSet.length; i++) {
+            functionSet[i] = in.readUTF();
+        }
+        Population population = new Population(trainingData, seed, functionSet);
+        population.generation = in.readInt();
+        population.lastSubsetBestFitness = in.readDouble();
+        population.rowEvaluations = in.readLong();
+        population.fullRowEvaluations = in.readLong();
+        population.racingRowsSaved = in.readLong();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            population.individuals.add(readIndividual(in));
+        }
+        int bestIndex = in.readInt();
+        if (bestIndex >= 0) {
+            population.bestIndividual = population.individuals.get(bestIndex);
+        } else if (in.readBoolean()) {
+            population.bestIndividual = readIndividual(in);
+        }
+        population.difficulty = readInts(in);
+        population.age = readInts(in);
+        population.rank = readInts(in);
+        int length = in.readInt();
+        if (length >= 0) {
+            population.crowding = new double[length];
+            for (int i = 0; i < length; i++) {
+                population.crowding[i] = in.readDouble();
+            }
+        }
+        return population;
+    }
+
+    private static Individual readIndividual(DataInput in) throws IOException {
+        double fitness = in.readDouble();
+        Individual individual = new Individual(Individual.readTree(in));
+        individual.setFitness(fitness);
+        return individual;
+    }
+
+    // Length (-1 for null) followed by the values
+    private static void writeInts(int[] values, DataOutput out) throws IOException {
+        out.writeInt(values != null ? values.length : -1);
+        if (values != null) {
+            for (int value : values) {
+                out.writeInt(value);
+            }
+        }
+    }
+
+    private static int[] readInts(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    /**
+     * Sets the number of threads used to breed and score offspring (1 = serial).
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Enables incremental evaluation: subtree output vectors over resident training blocks are
+     * cached (up to maxBytes, least recently used evicted) so offspring only recompute the
+     * nodes that changed. Pass 0 to disable.
+     */
+    public void setSemanticCache(long maxBytes) {
+        this.semanticCache = maxBytes > 0 ? new SemanticCache(maxBytes) : null;
+    }
+
+    public SemanticCache getSemanticCache() {
+        return semanticCache;
+    }
+
+    // Releases the worker threads; they are recreated if the population evolves again
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    // Runs body for every slot in [from, to), in parallel when more than one thread is configured
+    private void forEachSlot(int from, int to, IntConsumer body) {
+        if (threads <= 1 || to - from < 2) {
+            for (int i = from; i < to; i++) {
+                body.accept(i);
+            }
+            return;
+        }
+        if (pool == null) {
+            pool = new ForkJoinPool(threads);
+        }
+        try {
+            // A parallel stream started inside a pool runs on that pool's workers
+            pool.submit(() -> IntStream.range(from, to).parallel().forEach(body)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while evolving", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Switches selection to NSGA-II over (fitness, node count): parents and offspring compete
+     * on non-dominated rank and crowding distance, so cheap programs survive next to accurate
+     * ones. Multi-objective generations always score every training row.
+     */
+    public void setMultiObjective(boolean multiObjective) {
+        this.multiObjective = multiObjective;
+        // A population restored by readState already carries its ranks
+        if (multiObjective && (rank == null || rank.length != individuals.size())) {
+            rank = new int[individuals.size()];
+            crowding = new double[individuals.size()];
+            Nsga2.select(objectives(individuals), individuals.size(), rank, crowding);
+        }
+    }
+
+    // Objectives to minimise: misclassification (as -fitness) and node count
+    private static double[][] objectives(List<Individual> candidates) {
+        double[][] objectives = new double[candidates.size()][];
+        for (int i = 0; i < objectives.length; i++) {
+            Individual individual = candidates.get(i);
+            objectives[i] = new double[] {-individual.getFitness(), individual.nodeCount()};
+        }
+        return objectives;
+    }
+
+    /**
+     * Returns the non-dominated individuals of the current population, smallest first, with
+     * one representative per (node count, fitness) pair.
+     */
+    public List<Individual> getParetoFront() {
+        double[][] objectives = objectives(individuals);
+        int[] front = Nsga2.sort(objectives, new int[objectives.length]).get(0);
+        List<Individual> result = new ArrayList<>();
+        List<double[]> seen = new ArrayList<>();
+        for (int i : front) {
+            boolean duplicate = false;
+            for (double[] o : seen) {
+                duplicate |= Arrays.equals(o, objectives[i]);
+            }
+            if (!duplicate) {
+                seen.add(objectives[i]);
+                result.add(individuals.get(i));
+            }
+        }
+        result.sort((a, b) -> a.nodeCount() != b.nodeCount()
+            ? Integer.compare(a.nodeCount(), b.nodeCount())
+            : Double.compare(b.getFitness(), a.getFitness()));
+        return result;
+    }
+
+    /**
+     * Scores each generation on a random subset of the training blocks (1.0 = all rows).
+     * At least one block is always evaluated.
+     */
+    public void setSampleFraction(double sampleFraction) {
+        this.sampleFraction = sampleFraction;
+    }
+
+    /**
+     * Scores each generation on a rotating subset of about subsetSize rows instead of all
+     * training rows. Only the eliteSize fittest individuals on the subset are re-scored on
+     * the full data, and the best individual is chosen among them.
+     */
+    public void setSubsetFitness(SubsetStrategy strategy, int subsetSize, int eliteSize) {
+        this.subsetStrategy = strategy;
+        this.subsetSize = subsetSize;
+        this.eliteSize = Math.max(1, eliteSize);
+        // Restored difficulty and age (see readState) are kept
+        if (strategy == SubsetStrategy.DYNAMIC && (difficulty == null || difficulty.length != trainingData.numRows())) {
+            if (trainingData.numRows() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Dynamic subset selection needs per-row state and supports at most " + Integer.MAX_VALUE + " rows");
+            }
+            // Every row starts equally likely; difficulty and age then steer the selection
+            difficulty = new int[(int) trainingData.numRows()];
+            age = new int[(int) trainingData.numRows()];
+            Arrays.fill(difficulty, 1);
+            Arrays.fill(age, 1);
+        }
+    }
+
+    /**
+     * Races single-objective evaluation: rows are scored block by block and an offspring stops
+     * being scored once it can no longer reach the fitness at quantile (0 = worst, 1 = best) of
+     * its parents, even if it classified every remaining row correctly. It keeps its accuracy
+     * on the rows seen so far, which is below that fitness, so it still loses every comparison
+     * with a fully scored individual. With delta > 0 an offspring is also stopped once the
+     * Hoeffding bound says it reaches that fitness with probability below delta, which stops
+     * more individuals earlier at the risk of losing a rare late bloomer. Subset and
+     * multi-objective generations are never raced.
+     */
+    public void setRacing(boolean racing, double quantile, double delta) {
+        this.racing = racing;
+        this.racingQuantile = Math.min(1.0, Math.max(0.0, quantile));
+        this.racingDelta = delta;
+    }
+
+    /**
+     * Detects offspring that repeat a program already in the new generation, by canonical
+     * hash (so b + a repeats a + b). REPLACE swaps each repeat for a fresh random program
+     * before scoring; SKIP scores only the first copy and gives the repeats its fitness, which
+     * saves the evaluations without changing the run. Pass null to keep every offspring.
+     */
+    public void setDeduplication(DuplicateStrategy strategy) {
+        this.duplicateStrategy = strategy;
+    }
+
+    // Distinct programs in the last generation's offspring (after replacement) and how many
+    // repeats were found; 0 when deduplication is off
+    public int getLastUniquePrograms() {
+        return lastUniquePrograms;
+    }
+
+    public int getLastDuplicates() {
+        return lastDuplicates;
+    }
+
+    /**
+     * Finds repeated programs among the offspring by canonical hash, in slot order. REPLACE
+     * puts a fresh random program in each repeat's slot; SKIP returns for every slot the slot
+     * of the first copy of its program. Returns null when every slot is to be scored.
+     */
+    private int[] deduplicate(Individual[] offspring, long breedingGeneration) {
+        if (duplicateStrategy == null) {
+            return null;
+        }
+        Map<Long, Integer> first = new HashMap<>();
+        int[] firstOf = new int[offspring.length];
+        int duplicates = 0;
+        for (int slot = 0; slot < offspring.length; slot++) {
+            Integer earlier = first.putIfAbsent(offspring[slot].canonicalHash(), slot);
+            firstOf[slot] = slot;
+            if (earlier == null) {
+                continue;
+            }
+            duplicates++;
+            if (duplicateStrategy == DuplicateStrategy.SKIP) {
+                firstOf[slot] = earlier;
+                continue;
+            }
+            // Slots past the population size are never used for breeding, so these draws are fresh
+            SplittableRandom random = streams.forSlot(breedingGeneration, offspring.length + slot);
+            Individual fresh = Individual.generateRandom(trainingData.numFeatures(), random, operators());
+            for (int attempt = 1; attempt < MAX_REPLACEMENT_ATTEMPTS && first.containsKey(fresh.canonicalHash()); attempt++) {
+                fresh = Individual.generateRandom(trainingData.numFeatures(), random, operators());
+            }
+            first.putIfAbsent(fresh.canonicalHash(), slot);
+            offspring[slot] = fresh;
+        }
+        lastUniquePrograms = first.size();
+        lastDuplicates = duplicates;
+        return duplicateStrategy == DuplicateStrategy.SKIP ? firstOf : null;
+    }
+
+    // The individuals that are the first copy of their program (all of them when firstOf is null)
+    private static List<Individual> distinct(List<Individual> candidates, int[] firstOf) {
+        if (firstOf == null) {
+            return candidates;
+        }
+        List<Individual> result = new ArrayList<>();
+        for (int i = 0; i < firstOf.length; i++) {
+            if (firstOf[i] == i) {
+                result.add(candidates.get(i));
+            }
+        }
+        return result;
+    }
+
+    // Gives every skipped repeat the fitness of its first copy
+    private static void copyFitness(List<Individual> candidates, int[] firstOf) {
+        if (firstOf == null) {
+            return;
+        }
+        for (int i = 0; i < firstOf.length; i++) {
+            if (firstOf[i] != i) {
+                candidates.get(i).setFitness(candidates.get(firstOf[i]).getFitness());
+            }
+        }
+    }
+
+    // Fitness at the racing quantile of the current individuals, or -infinity when not racing
+    private double raceThreshold() {
+        if (!racing || multiObjective || (subsetStrategy != null && subsetSize < trainingData.numRows())) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        double[] fitness = new double[individuals.size()];
+        for (int i = 0; i < fitness.length; i++) {
+            fitness[i] = individuals.get(i).getFitness();
+        }
+        Arrays.sort(fitness);
+        return fitness[(int) Math.floor(racingQuantile * (fitness.length - 1))];
+    }
+
+    // True once correct predictions on seen of total rows cannot reach threshold (or, with a
+    // racing delta, are unlikely to)
+    private boolean hopeless(long correct, long seen, long total, double threshold) {
+        if (correct + (total - seen) < threshold * total) {
+            return true;
+        }
+        return racingDelta > 0 && seen > 0
+            && (double) correct / seen + Math.sqrt(Math.log(1.0 / racingDelta) / (2.0 * seen)) < threshold;
+    }
+
+    // Counts the rows racing skipped for the scored slots from index from on (skipped
+    // duplicates, where firstOf points elsewhere, are not racing's doing)
+    private void recordRacing(long[] seen, long total, int from, int[] firstOf) {
+        long saved = 0;
+        int raced = 0;
+        for (int i = from; i < seen.length; i++) {
+            if (firstOf != null && firstOf[i] != i) {
+                continue;
+            }
+            saved += total - seen[i];
+            raced += seen[i] < total ? 1 : 0;
+        }
+        lastRacingRowsSaved = saved;
+        lastRacedIndividuals = raced;
+        racingRowsSaved += saved;
+        Metrics.add(Metrics.RACING_ROWS_SAVED, saved);
+    }
+
+    private void evaluatePopulation(double threshold, int[] firstOf) {
+        boolean useSubset = subsetStrategy != null && subsetSize < trainingData.numRows();
+        generation++;
+        SplittableRandom random = streams.forGeneration(generation);
+        // When duplicates are skipped only the first copy of each program is scored
+        List<Individual> scored = distinct(individuals, firstOf);
+        fullRowEvaluations += trainingData.numRows() * individuals.size();
+        if (!useSubset) {
+            long[] correct = new long[scored.size()];
+            boolean[] selected = selectBlocks(random);
+            if (threshold == Double.NEGATIVE_INFINITY) {
+                long rows = scoreBlocks(trainingData, selected, scored, correct, null);
+                assignFitness(scored, correct, rows);
+                bestIndividual = fittest(scored);
+            } else {
+                long[] seen = new long[scored.size()];
+                long total = scoreRace(scored, selected, correct, seen, threshold);
+                assignFitness(scored, correct, seen);
+                recordRacing(seen, total, 0, null);
+                bestIndividual = fittest(scored);
+                if (seen[scored.indexOf(bestIndividual)] < total) {
+                    // Every individual was stopped (possible with a delta or sampled blocks); score
+                    // the fittest on every selected row so the reported best fitness stays exact
+                    long[] bestCorrect = new long[1];
+                    List<Individual> best = List.of(bestIndividual);
+                    assignFitness(best, bestCorrect, scoreBlocks(trainingData, selected, best, bestCorrect, null));
+                }
+            }
+        } else {
+            Subset subset = drawSubset(random);
+            long[] correct = new long[scored.size()];
+            int[] misses = subsetStrategy == SubsetStrategy.DYNAMIC ? new int[subset.rowIds.length] : null;
+            long rows = scoreBlocks(subset.source, null, scored, correct, misses);
+            assignFitness(scored, correct, rows);
+            if (misses != null) {
+                updateDifficulty(subset.rowIds, misses);
+            }
+
+            // Re-score the elite on every row so the reported best fitness is exact
+            List<Individual> elite = top(scored, eliteSize);
+            lastSubsetBestFitness = elite.get(0).getFitness();
+            long[] eliteCorrect = new long[elite.size()];
+            long fullRows = scoreBlocks(trainingData, null, elite, eliteCorrect, null);
+            assignFitness(elite, eliteCorrect, fullRows);
+            bestIndividual = fittest(elite);
+        }
+        copyFitness(individuals, firstOf);
+    }
+
+    // Scores the given individuals over the selected blocks of a source (all blocks when
+    // selected is null), adding each one's correct predictions to correct. Blocks are the
+    // outer loop so each block is read once per generation, however large the source is.
+    private long scoreBlocks(BlockSource source, boolean[] selected, List<Individual> scored, long[] correct, int[] misses) {
+        long rows = 0;
+        try (BlockCursor cursor = source.openCursor()) {
+            for (int b = 0; selected == null || b < selected.length; b++) {
+                if (selected != null && !selected[b]) {
+                    if (!cursor.skip()) {
+                        break;
+                    }
+                    continue;
+                }
+                DataBlock block = cursor.next();
+                if (block == null) {
+                    break;
+                }
+                final DataBlock current = block;
+                final int offset = (int) rows;
+                if (misses == null) {
+                    // Each individual only writes its own counter
+                    forEachSlot(0, scored.size(), i -> correct[i] += scored.get(i).countCorrect(current, semanticCache));
+                } else {
+                    // Miss counts are shared between individuals, so keep this serial
+                    for (int i = 0; i < scored.size(); i++) {
+                        correct[i] += scored.get(i).countCorrect(current, misses, offset, semanticCache);
+                    }
+                }
+                rows += block.size;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read training data", e);
+        }
+        rowEvaluations += rows * scored.size();
+        Metrics.add(Metrics.TREE_EVALUATIONS, rows * scored.size());
+        return rows;
     }
 
-    private void evaluatePopulation() {
-        bestIndividual = null;
+    /**
+     * Scores the individuals over the selected blocks, block by block, leaving out each one
+     * from the block after it became hopeless against threshold. seen receives the rows each
+     * one was scored on; returns the number of selected rows.
+     */
+    private long scoreRace(List<Individual> scored, boolean[] selected, long[] correct, long[] seen, double threshold) {
+        long total = 0;
+        for (int b = 0; b < selected.length; b++) {
+            if (selected[b]) {
+                total += Math.min(trainingData.blockSize(), trainingData.numRows() - (long) b * trainingData.blockSize());
+            }
+        }
+        final long selectedRows = total;
+        boolean[] stopped = new boolean[scored.size()];
+        try (BlockCursor cursor = trainingData.openCursor()) {
+            for (int b = 0; b < selected.length; b++) {
+                if (!selected[b]) {
+                    if (!cursor.skip()) {
+                        break;
+                    }
+                    continue;
+                }
+                DataBlock block = cursor.next();
+                if (block == null) {
+                    break;
+                }
+                final DataBlock current = block;
+                forEachSlot(0, scored.size(), i -> {
+                    if (!stopped[i]) {
+                        correct[i] += scored.get(i).countCorrect(current, semanticCache);
+                        seen[i] += current.size;
+                        stopped[i] = hopeless(correct[i], seen[i], selectedRows, threshold);
+                    }
+                });
+                boolean running = false;
+                for (boolean s : stopped) {
+                    running |= !s;
+                }
+                if (!running) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read training data", e);
+        }
+        long evaluated = 0;
+        for (long rows : seen) {
+            evaluated += rows;
+        }
+        rowEvaluations += evaluated;
+        Metrics.add(Metrics.TREE_EVALUATIONS, evaluated);
+        return selectedRows;
+    }
+
+    private static void assignFitness(List<Individual> scored, long[] correct, long[] seen) {
+        for (int i = 0; i < scored.size(); i++) {
+            scored.get(i).setFitness(seen[i] == 0 ? 0.0 : (double) correct[i] / seen[i]);
+        }
+    }
+
+    private static void assignFitness(List<Individual> scored, long[] correct, long rows) {
+        for (int i = 0; i < scored.size(); i++) {
+            scored.get(i).setFitness(rows == 0 ? 0.0 : (double) correct[i] / rows);
+        }
+    }
+
+    private static Individual fittest(List<Individual> candidates) {
+        Individual best = null;
         double bestFitness = Double.NEGATIVE_INFINITY;
-        
-        for (Individual individual : individuals) {
-            double fitness = evaluateFitness(individual);
-            individual.setFitness(fitness);
-            
-            if (fitness > bestFitness) {
-                bestFitness = fitness;
-                bestIndividual = individual;
+        for (Individual individual : candidates) {
+            if (individual.getFitness() > bestFitness) {
+                bestFitness = individual.getFitness();
+                best = individual;
             }
         }
+        return best;
     }
 
-    private double evaluateFitness(Individual individual) {
-        int correctPredictions = 0;
-        
-        for (Individual.DataPoint point : trainingData) {
-            double prediction = individual.evaluate(point);
-            double classifiedAs = prediction > 0.5 ? 1.0 : 0.0;
-            
-            if (Math.abs(classifiedAs - point.label) < 0.01) {
-                correctPredictions++;
+    // Rows selected for one generation, gathered into memory with their original row numbers
+    private static class Subset {
+        final InMemoryBlockSource source;
+        final int[] rowIds;
+
+        Subset(InMemoryBlockSource source, int[] rowIds) {
+            this.source = source;
+            this.rowIds = rowIds;
+        }
+    }
+
+    private Subset drawSubset(SplittableRandom random) {
+        long numRows = trainingData.numRows();
+        long stride = Math.max(1, (numRows + subsetSize - 1) / subsetSize);
+        long offset = generation % stride;
+        double uniform = (double) subsetSize / numRows;
+
+        // Dynamic subset selection: weight = difficulty^d + age^a (Gathercole and Ross)
+        double[] weights = null;
+        double scale = 0.0;
+        if (subsetStrategy == SubsetStrategy.DYNAMIC) {
+            weights = new double[difficulty.length];
+            double total = 0.0;
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = Math.pow(difficulty[i], DIFFICULTY_EXPONENT) + Math.pow(age[i], AGE_EXPONENT);
+                total += weights[i];
             }
+            scale = subsetSize / total;
         }
-        
-        return (double) correctPredictions / trainingData.size();
+
+        InMemoryBlockSource subset = new InMemoryBlockSource(trainingData.numFeatures(), trainingData.blockSize(), false);
+        List<Integer> rowIds = new ArrayList<>(subsetSize);
+        double[] features = new double[trainingData.numFeatures()];
+        long row = 0;
+        try (BlockCursor cursor = trainingData.openCursor()) {
+            DataBlock block;
+            while ((block = cursor.next()) != null) {
+                for (int i = 0; i < block.size; i++, row++) {
+                    boolean take;
+                    switch (subsetStrategy) {
+                        case INTERLEAVED:
+                            take = row % stride == offset;
+                            break;
+                        case DYNAMIC:
+                            take = random.nextDouble() < Math.min(1.0, weights[(int) row] * scale);
+                            break;
+                        default:
+                            take = random.nextDouble() < uniform;
+                    }
+                    if (take) {
+                        for (int f = 0; f < features.length; f++) {
+                            features[f] = block.columns[f][i];
+                        }
+                        subset.add(features, block.labels[i]);
+                        rowIds.add((int) row);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read training data", e);
+        }
+        if (rowIds.isEmpty()) {
+            // Tiny subsets can come out empty by chance; fall back to the first block's first row
+            DataBlock first = firstBlock();
+            for (int f = 0; f < features.length; f++) {
+                features[f] = first.columns[f][0];
+            }
+            subset.add(features, first.labels[0]);
+            rowIds.add(0);
+        }
+        int[] ids = new int[rowIds.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = rowIds.get(i);
+        }
+        return new Subset(subset, ids);
+    }
+
+    private DataBlock firstBlock() {
+        try (BlockCursor cursor = trainingData.openCursor()) {
+            return cursor.next();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read training data", e);
+        }
+    }
+
+    private void updateDifficulty(int[] rowIds, int[] misses) {
+        for (int i = 0; i < age.length; i++) {
+            age[i]++;
+        }
+        for (int i = 0; i < rowIds.length; i++) {
+            difficulty[rowIds[i]] = Math.max(1, misses[i]);
+            age[rowIds[i]] = 1;
+        }
+    }
+
+    /**
+     * Scores every individual of the current population on the full training data without
+     * changing their fitness, and returns the best full-data fitness found.
+     */
+    public double bestFullFitness() {
+        long[] correct = new long[individuals.size()];
+        long rows = scoreBlocks(trainingData, null, individuals, correct, null);
+        long best = 0;
+        for (long c : correct) {
+            best = Math.max(best, c);
+        }
+        return rows == 0 ? 0.0 : (double) best / rows;
+    }
+
+    // Best subset fitness of the last generation, before the elite was re-scored
+    public double getLastSubsetBestFitness() {
+        return lastSubsetBestFitness;
+    }
+
+    // Row evaluations actually performed versus what full evaluation would have needed
+    public long getRowEvaluations() {
+        return rowEvaluations;
+    }
+
+    public long getFullRowEvaluations() {
+        return fullRowEvaluations;
+    }
+
+    // Row evaluations racing skipped in total and in the last generation, and how many
+    // individuals the last generation stopped early
+    public long getRacingRowsSaved() {
+        return racingRowsSaved;
+    }
+
+    public long getLastRacingRowsSaved() {
+        return lastRacingRowsSaved;
+    }
+
+    public int getLastRacedIndividuals() {
+        return lastRacedIndividuals;
+    }
+
+    private boolean[] selectBlocks(SplittableRandom random) {
+        int numBlocks = trainingData.numBlocks();
+        boolean[] selected = new boolean[numBlocks];
+        if (sampleFraction >= 1.0) {
+            Arrays.fill(selected, true);
+            return selected;
+        }
+        int count = Math.max(1, (int) Math.round(numBlocks * sampleFraction));
+        int[] order = new int[numBlocks];
+        for (int i = 0; i < numBlocks; i++) {
+            order[i] = i;
+        }
+        // Partial Fisher-Yates shuffle picks count distinct blocks
+        for (int i = 0; i < count; i++) {
+            int j = i + random.nextInt(numBlocks - i);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+            selected[order[i]] = true;
+        }
+        return selected;
     }
 
     public void evolve(double mutationRate, double crossoverRate) {
-        List<Individual> newPopulation = new ArrayList<>();
+        if (multiObjective) {
+            evolveMultiObjective(mutationRate, crossoverRate);
+            return;
+        }
+        int size = individuals.size();
+        Individual[] next = new Individual[size];
+        final long breedingGeneration = generation;
+        final double threshold = raceThreshold();
         
         // Elitism: keep the best individual
-        newPopulation.add(bestIndividual.deepCopy());
-        
-        // Generate rest of the population
-        while (newPopulation.size() < individuals.size()) {
-            if (random.nextDouble() < crossoverRate) {
-                // Crossover
-                Individual parent1 = tournamentSelection();
-                Individual parent2 = tournamentSelection();
-                Individual[] children = crossover(parent1, parent2);
-                newPopulation.add(children[0]);
-                if (newPopulation.size() < individuals.size()) {
-                    newPopulation.add(children[1]);
+        next[0] = bestIndividual.deepCopy();
+
+        boolean fused = trainingData.isInMemory() && subsetStrategy == null && sampleFraction >= 1.0;
+        if (!fused) {
+            // Breed every slot independently, then score the whole generation block by block
+            forEachSlot(1, size, slot -> next[slot] = breed(streams.forSlot(breedingGeneration, slot), mutationRate, crossoverRate));
+            int[] firstOf = deduplicate(next, breedingGeneration);
+            individuals = new ArrayList<>(Arrays.asList(next));
+            evaluatePopulation(threshold, firstOf);
+            return;
+        }
+
+        long[] correct = new long[size];
+        long[] seen = new long[size];
+        long rows = trainingData.numRows();
+        correct[0] = Math.round(bestIndividual.getFitness() * rows);
+        seen[0] = rows;
+        int[] firstOf = null;
+        if (duplicateStrategy == null) {
+            // Data is resident and every row is scored: breed and score each offspring in the
+            // same task, so its tree is still in cache when it is evaluated
+            forEachSlot(1, size, slot -> {
+                next[slot] = breed(streams.forSlot(breedingGeneration, slot), mutationRate, crossoverRate);
+                correct[slot] = scoreAllBlocks(next[slot], threshold, seen, slot);
+            });
+        } else {
+            // Duplicates are only known once every slot is bred
+            forEachSlot(1, size, slot -> next[slot] = breed(streams.forSlot(breedingGeneration, slot), mutationRate, crossoverRate));
+            int[] first = deduplicate(next, breedingGeneration);
+            forEachSlot(1, size, slot -> {
+                if (first == null || first[slot] == slot) {
+                    correct[slot] = scoreAllBlocks(next[slot], threshold, seen, slot);
                 }
-            } else {
-                // Mutation
-                Individual individual = tournamentSelection();
-                Individual mutated = mutate(individual, mutationRate);
-                newPopulation.add(mutated);
+            });
+            firstOf = first;
+        }
+        generation++;
+        individuals = new ArrayList<>(Arrays.asList(next));
+        long evaluated = 0;
+        for (int slot = 1; slot < size; slot++) {
+            evaluated += firstOf == null || firstOf[slot] == slot ? seen[slot] : 0;
+        }
+        rowEvaluations += evaluated;
+        fullRowEvaluations += rows * size;
+        Metrics.add(Metrics.TREE_EVALUATIONS, evaluated);
+        if (threshold != Double.NEGATIVE_INFINITY) {
+            recordRacing(seen, rows, 1, firstOf);
+        }
+        if (firstOf != null) {
+            for (int slot = 1; slot < size; slot++) {
+                correct[slot] = correct[firstOf[slot]];
+                seen[slot] = seen[firstOf[slot]];
             }
         }
-        
-        individuals = newPopulation;
-        evaluatePopulation();
+        assignFitness(individuals, correct, seen);
+        individuals.get(0).setFitness(bestIndividual.getFitness());
+        bestIndividual = fittest(individuals);
     }
 
-    private Individual tournamentSelection() {
+    // One NSGA-II generation: a full offspring population, then (mu + lambda) survival
+    private void evolveMultiObjective(double mutationRate, double crossoverRate) {
+        int size = individuals.size();
+        Individual[] offspring = new Individual[size];
+        final long breedingGeneration = generation;
+        forEachSlot(0, size, slot -> offspring[slot] = breed(streams.forSlot(breedingGeneration, slot), mutationRate, crossoverRate));
+        int[] firstOf = deduplicate(offspring, breedingGeneration);
+        generation++;
+        List<Individual> children = Arrays.asList(offspring);
+        List<Individual> scored = distinct(children, firstOf);
+        long[] correct = new long[scored.size()];
+        long rows = scoreBlocks(trainingData, null, scored, correct, null);
+        fullRowEvaluations += trainingData.numRows() * size;
+        assignFitness(scored, correct, rows);
+        copyFitness(children, firstOf);
+
+        // Parents and offspring compete for the next generation on both objectives
+        List<Individual> combined = new ArrayList<>(individuals);
+        combined.addAll(children);
+        int[] combinedRank = new int[combined.size()];
+        double[] combinedCrowding = new double[combined.size()];
+        int[] survivors = Nsga2.select(objectives(combined), size, combinedRank, combinedCrowding);
+        List<Individual> next = new ArrayList<>(size);
+        for (int k = 0; k < survivors.length; k++) {
+            next.add(combined.get(survivors[k]));
+            rank[k] = combinedRank[survivors[k]];
+            crowding[k] = combinedCrowding[survivors[k]];
+        }
+        individuals = next;
+        bestIndividual = fittest(individuals);
+    }
+
+    // Correct predictions of one individual over the training blocks, stopping once it is
+    // hopeless against threshold; seen[slot] receives the rows it was scored on
+    private long scoreAllBlocks(Individual individual, double threshold, long[] seen, int slot) {
+        long correct = 0;
+        long rows = 0;
+        long total = trainingData.numRows();
+        try (BlockCursor cursor = trainingData.openCursor()) {
+            DataBlock block;
+            while ((block = cursor.next()) != null) {
+                correct += individual.countCorrect(block, semanticCache);
+                rows += block.size;
+                if (hopeless(correct, rows, total, threshold)) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read training data", e);
+        }
+        seen[slot] = rows;
+        return correct;
+    }
+
+    // Produces one offspring for a slot using only that slot's random stream
+    private Individual breed(SplittableRandom random, double mutationRate, double crossoverRate) {
+        if (random.nextDouble() < crossoverRate) {
+            // Crossover
+            Individual parent1 = tournamentSelection(random);
+            Individual parent2 = tournamentSelection(random);
+            return crossover(parent1, parent2, random);
+        }
+        // Mutation
+        Individual individual = tournamentSelection(random);
+        return mutate(individual, mutationRate, random);
+    }
+
+    private Individual tournamentSelection(SplittableRandom random) {
         int tournamentSize = 3;
-        Individual best = individuals.get(random.nextInt(individuals.size()));
+        int best = random.nextInt(individuals.size());
         
         for (int i = 1; i < tournamentSize; i++) {
-            Individual candidate = individuals.get(random.nextInt(individuals.size()));
-            if (candidate.getFitness() > best.getFitness()) {
+            int candidate = random.nextInt(individuals.size());
+            boolean better = multiObjective
+                ? Nsga2.crowdedBetter(rank[candidate], crowding[candidate], rank[best], crowding[best])
+                : individuals.get(candidate).getFitness() > individuals.get(best).getFitness();
+            if (better) {
                 best = candidate;
             }
         }
         
-        return best;
+        return individuals.get(best);
     }
 
-    private Individual[] crossover(Individual parent1, Individual parent2) {
-        Individual child1 = parent1.deepCopy();
-        Individual child2 = parent2.deepCopy();
+    // Copies parent1 and replaces the left subtree of a random node with a copy of the left
+    // subtree of a random node of parent2 (the first child of a one-point subtree swap)
+    private Individual crossover(Individual parent1, Individual parent2, SplittableRandom random) {
+        Individual child = parent1.deepCopy();
         
         // Select random crossover points
-        Individual.Node point1 = child1.getRandomNode(random);
-        Individual.Node point2 = child2.getRandomNode(random);
+        Individual.Node point1 = child.getRandomNode(random);
+        Individual.Node point2 = parent2.getRandomNode(random);
         
         // Perform crossover
-        Individual.Node temp = point1.left;
-        point1.left = point2.left;
-        point2.left = temp;
+        point1.left = point2.left != null ? point2.left.deepCopy() : null;
         
-        return new Individual[]{child1, child2};
+        return child;
     }
 
-    private Individual mutate(Individual individual, double mutationRate) {
+    private Individual mutate(Individual individual, double mutationRate, SplittableRandom random) {
         Individual mutated = individual.deepCopy();
         Individual.Node mutationPoint = mutated.getRandomNode(random);
         
         if (random.nextDouble() < mutationRate) {
             // Replace with a new random subtree
-            Individual.Node newNode = Individual.generateRandom(trainingData.get(0).features.length, random).getRandomNode(random);
+            Individual.Node newNode = Individual.generateRandom(trainingData.numFeatures(), random, operators()).getRandomNode(random);
             mutationPoint.left = newNode.left;
             mutationPoint.right = newNode.right;
+            mutationPoint.extra = newNode.extra;
             mutationPoint.value = newNode.value;
         }
         
         return mutated;
     }
 
+    private Operator[] operators() {
+        if (operators == null) {
+            operators = Operators.resolve(functionSet);
+        }
+        return operators;
+    }
+
     public Individual getBestIndividual() {
         return bestIndividual;
     }
+
+    // Returns the n fittest individuals, best first
+    public List<Individual> getTopIndividuals(int n) {
+        return top(individuals, n);
+    }
+
+    private static List<Individual> top(List<Individual> candidates, int n) {
+        List<Individual> sorted = new ArrayList<>(candidates);
+        sorted.sort((a, b) -> Double.compare(b.getFitness(), a.getFitness()));
+        return new ArrayList<>(sorted.subList(0, Math.min(n, sorted.size())));
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,49 @@
+package main.java.models;
+
+import java.io.Serializable;
+import java.util.SplittableRandom;
+
+/**
+ * Derives independent random streams from one seed, one per (generation, slot) pair.
+ * Each slot of a generation gets its own generator, so offspring can be bred on any thread
+ * without sharing state, and a seed yields the same run regardless of thread count.
+ */
+public final class RandomStreams implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    // Slot used for population-level decisions such as data sampling
+    public static final int POPULATION_SLOT = -1;
+
+    private final long seed;
+
+    public RandomStreams(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public SplittableRandom forSlot(long generation, int slot) {
+        long h = mix64(seed + GOLDEN_GAMMA);
+        h = mix64(h + generation * GOLDEN_GAMMA);
+        h = mix64(h + slot * 0xc2b2ae3d27d4eb4fL);
+        return new SplittableRandom(h);
+    }
+
+    public SplittableRandom forGeneration(long generation) {
+        return forSlot(generation, POPULATION_SLOT);
+    }
+
+    // Derives a new seed, e.g. for a later training run of the same classifier
+    public static long deriveSeed(long seed, long index) {
+        return mix64(mix64(seed) + index * GOLDEN_GAMMA);
+    }
+
+    // SplitMix64 finalizer
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,138 @@
+package main.java.models;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import utils.Metrics;
+
+/**
+ * Memory-bounded LRU cache of subtree output vectors, keyed by the subtree's canonical hash
+ * and the block it was evaluated on. Offspring share most subtrees with their parents, so
+ * after crossover or mutation only the nodes on the path from the changed node to the root
+ * miss the cache and are recomputed, and a commuted copy (b + a for a + b) hits too.
+ *
+ * The parallel evaluation workers all go through one cache, so it is split into segments by
+ * key, each an LRU with its own lock and an equal share of the byte budget; workers only
+ * contend when they touch the same segment. Evictions are LRU within a segment.
+ */
+public class SemanticCache {
+    public static final String HITS = "gp.semantic.cache.hits";
+    public static final String MISSES = "gp.semantic.cache.misses";
+    // Rough per-entry cost of the map entry, key and array headers
+    private static final long ENTRY_OVERHEAD_BYTES = 96;
+    private static final int MAX_SEGMENTS = 16;
+    // Smallest budget worth its own segment, so small caches are not split into tiny LRUs
+    private static final long MIN_SEGMENT_BYTES = 1L << 20;
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private static final class Segment {
+        private final long maxBytes;
+        private long usedBytes = 0;
+        private final LinkedHashMap<Long, double[]> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized double[] get(long key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(long key, double[] vector) {
+            long cost = vector.length * 8L + ENTRY_OVERHEAD_BYTES;
+            if (cost > maxBytes) {
+                return;
+            }
+            double[] previous = entries.put(key, vector);
+            if (previous != null) {
+                usedBytes -= previous.length * 8L + ENTRY_OVERHEAD_BYTES;
+            }
+            usedBytes += cost;
+            Iterator<Map.Entry<Long, double[]>> eldest = entries.entrySet().iterator();
+            while (usedBytes > maxBytes && eldest.hasNext()) {
+                usedBytes -= eldest.next().getValue().length * 8L + ENTRY_OVERHEAD_BYTES;
+                eldest.remove();
+            }
+        }
+
+        synchronized long usedBytes() {
+            return usedBytes;
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            usedBytes = 0;
+        }
+    }
+
+    public SemanticCache(long maxBytes) {
+        this(maxBytes, (int) Math.max(1, Math.min(MAX_SEGMENTS, Long.highestOneBit(maxBytes / MIN_SEGMENT_BYTES))));
+    }
+
+    // segmentCount is rounded down to a power of two
+    public SemanticCache(long maxBytes, int segmentCount) {
+        int count = Integer.highestOneBit(Math.max(1, segmentCount));
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(maxBytes / count);
+        }
+    }
+
+    static long key(long subtreeHash, long blockId) {
+        long z = subtreeHash ^ (blockId * 0x9e3779b97f4a7c15L);
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        return z ^ (z >>> 33);
+    }
+
+    // Keys are already mixed, so the top bits spread evenly over the segments
+    private Segment segment(long key) {
+        return segments[(int) (key >>> 40) & (segments.length - 1)];
+    }
+
+    // Returns the cached output vector, or null. Callers must not modify it.
+    public double[] get(long key) {
+        double[] vector = segment(key).get(key);
+        if (vector != null) {
+            hits.increment();
+            Metrics.increment(HITS);
+        } else {
+            misses.increment();
+            Metrics.increment(MISSES);
+        }
+        return vector;
+    }
+
+    public void put(long key, double[] vector) {
+        segment(key).put(key, vector);
+    }
+
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getUsedBytes() {
+        long used = 0;
+        for (Segment segment : segments) {
+            used += segment.usedBytes();
+        }
+        return used;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+}
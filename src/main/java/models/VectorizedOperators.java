@@ -0,0 +1,132 @@
+package main.java.models;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD block loops for the built-in operators whose lane-wise forms round exactly like their
+ * scalar forms (+ - * / min max ifgt abs), using jdk.incubator.vector. Only loaded through
+ * Operators.setVectorBackend once the module is present. tanh and sigmoid keep their scalar
+ * loops: the vector transcendental functions may differ from Math in the last bit.
+ */
+final class VectorizedOperators {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final DoubleVector ONE = DoubleVector.broadcast(SPECIES, 1.0);
+    private static final DoubleVector EPSILON = DoubleVector.broadcast(SPECIES, Operators.PROTECTED_DIVISION_EPSILON);
+
+    private VectorizedOperators() {
+    }
+
+    static void registerAll() {
+        Operators.register(new Operator("+", 2, true) {
+            public double apply(double a, double b, double c, double d) {
+                return a + b;
+            }
+
+            public void apply(double[] a, double[] b, double[] c, double[] d, double[] out, int n) {
+                int i = 0;
+                for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, a, i).add(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+                }
+                for (; i < n; i++) out[i] = a[i] + b[i];
+            }
+        });
+        Operators.register(new Operator("-", 2, false) {
+            public double apply(double a, double b, double c, double d) {
+                return a - b;
+            }
+
+            public void apply(double[] a, double[] b, double[] c, double[] d, double[] out, int n) {
+                int i = 0;
+                for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, a, i).sub(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+                }
+                for (; i < n; i++) out[i] = a[i] - b[i];
+            }
+        });
+        Operators.register(new Operator("*", 2, true) {
+            public double apply(double a, double b, double c, double d) {
+                return a * b;
+            }
+
+            public void apply(double[] a, double[] b, double[] c, double[] d, double[] out, int n) {
+                int i = 0;
+                for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, a, i).mul(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+                }
+                for (; i < n; i++) out[i] = a[i] * b[i];
+            }
+        });
+        Operators.register(new Operator("/", 2, false) {
+            public double apply(double a, double b, double c, double d) {
+                return Math.abs(b) < Operators.PROTECTED_DIVISION_EPSILON ? 1.0 : a / b;
+            }
+
+            // Divides every lane, then masks the lanes with a near-zero divisor to 1.0
+            public void apply(double[] a, double[] b, double[] c, double[] d, double[] out, int n) {
+                int i = 0;
+                for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+                    DoubleVector divisor = DoubleVector.fromArray(SPECIES, b, i);
+                    VectorMask<Double> tiny = divisor.abs().compare(VectorOperators.LT, EPSILON);
+                    DoubleVector.fromArray(SPECIES, a, i).div(divisor).blend(ONE, tiny).intoArray(out, i);
+                }
+                for (; i < n; i++) out[i] = Math.abs(b[i]) < Operators.PROTECTED_DIVISION_EPSILON ? 1.0 : a[i] / b[i];
+            }
+        });
+        Operators.register(new Operator("min", 2, true) {
+            public double apply(double a, double b, double c, double d) {
+                return Math.min(a, b);
+            }
+
+            public void apply(double[] a, double[] b, double[] c, double[] d, double[] out, int n) {
+                int i = 0;
+                for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, a, i).min(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+                }
+                for (; i < n; i++) out[i] = Math.min(a[i], b[i]);
+            }
+        });
+        Operators.register(new Operator("max", 2, true) {
+            public double apply(double a, double b, double c, double d) {
+                return Math.max(a, b);
+            }
+
+            public void apply(double[] a, double[] b, double[] c, double[] d, double[] out, int n) {
+                int i = 0;
+                for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, a, i).max(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+                }
+                for (; i < n; i++) out[i] = Math.max(a[i], b[i]);
+            }
+        });
+        Operators.register(new Operator("ifgt", 4, false) {
+            public double apply(double a, double b, double c, double d) {
+                return a > b ? c : d;
+            }
+
+            public void apply(double[] a, double[] b, double[] c, double[] d, double[] out, int n) {
+                int i = 0;
+                for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+                    VectorMask<Double> greater = DoubleVector.fromArray(SPECIES, a, i).compare(VectorOperators.GT, DoubleVector.fromArray(SPECIES, b, i));
+                    DoubleVector.fromArray(SPECIES, d, i).blend(DoubleVector.fromArray(SPECIES, c, i), greater).intoArray(out, i);
+                }
+                for (; i < n; i++) out[i] = a[i] > b[i] ? c[i] : d[i];
+            }
+        });
+        Operators.register(new Operator("abs", 1, false) {
+            public double apply(double a, double b, double c, double d) {
+                return Math.abs(a);
+            }
+
+            public void apply(double[] a, double[] b, double[] c, double[] d, double[] out, int n) {
+                int i = 0;
+                for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, a, i).abs().intoArray(out, i);
+                }
+                for (; i < n; i++) out[i] = Math.abs(a[i]);
+            }
+        });
+    }
+}
@@ -0,0 +1,8 @@
+package main.java.models;
+
+/**
+ * A block source that is filled row by row, e.g. while copying Weka instances in.
+ */
+public interface WritableBlockSource extends BlockSource {
+    void add(double[] features, double label);
+}
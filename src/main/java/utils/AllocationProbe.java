@@ -0,0 +1,58 @@
+package utils;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures heap bytes allocated by the current thread, using HotSpot's per-thread allocation
+ * counter (com.sun.management.ThreadMXBean). Used to check that hot paths allocate nothing.
+ */
+public final class AllocationProbe {
+    private static final com.sun.management.ThreadMXBean threads = lookup();
+
+    // A call to measure; may throw like the classifier methods it usually wraps
+    public interface Call {
+        void run() throws Exception;
+    }
+
+    private AllocationProbe() {
+    }
+
+    private static com.sun.management.ThreadMXBean lookup() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) bean;
+            if (hotspot.isThreadAllocatedMemorySupported()) {
+                hotspot.setThreadAllocatedMemoryEnabled(true);
+                return hotspot;
+            }
+        }
+        return null;
+    }
+
+    public static boolean isSupported() {
+        return threads != null;
+    }
+
+    // Bytes allocated so far by the calling thread, or -1 if the JVM cannot tell
+    public static long allocatedBytes() {
+        return threads != null ? threads.getThreadAllocatedBytes(Thread.currentThread().threadId()) : -1;
+    }
+
+    /**
+     * Average bytes allocated per call, measured over iterations calls after warmup calls
+     * (so class loading and JIT compilation are not counted). Returns -1 if unsupported.
+     */
+    public static double bytesPerCall(int warmup, int iterations, Call call) throws Exception {
+        if (threads == null) {
+            return -1;
+        }
+        for (int i = 0; i < warmup; i++) {
+            call.run();
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < iterations; i++) {
+            call.run();
+        }
+        return (double) (allocatedBytes() - before) / iterations;
+    }
+}
@@ -0,0 +1,144 @@
+package utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import main.java.models.BlockCursor;
+import main.java.models.BlockSource;
+import main.java.models.DataBlock;
+
+/**
+ * Streams training data from a compact binary file block by block.
+ * Layout: int magic, int version, int numFeatures, long numRows, then one row after another
+ * as numFeatures feature doubles followed by the label (big-endian).
+ */
+public class BinaryBlockSource implements BlockSource, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int MAGIC = 0x47504244; // "GPBD"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 8;
+
+    private final File file;
+    private final int blockSize;
+    private final int numFeatures;
+    private final long numRows;
+
+    public BinaryBlockSource(File file, int blockSize) throws IOException {
+        this.file = file;
+        this.blockSize = blockSize;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+                throw new IOException("Not a binary training data file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary data version " + version + " in " + file);
+            }
+            this.numFeatures = header.getInt();
+            this.numRows = header.getLong();
+        }
+    }
+
+    /**
+     * Writes every block of the source to a binary file readable by this class.
+     */
+    public static void write(BlockSource source, File output) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output), 1 << 16));
+             BlockCursor cursor = source.openCursor()) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(source.numFeatures());
+            out.writeLong(source.numRows());
+            DataBlock block;
+            while ((block = cursor.next()) != null) {
+                for (int i = 0; i < block.size; i++) {
+                    for (int f = 0; f < block.numFeatures(); f++) {
+                        out.writeDouble(block.columns[f][i]);
+                    }
+                    out.writeDouble(block.labels[i]);
+                }
+            }
+        }
+    }
+
+    // Converts a CSV training file: java utils.BinaryBlockSource <input.csv> <output.bin>
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: java utils.BinaryBlockSource <input.csv> <output.bin>");
+            return;
+        }
+        write(new CsvBlockSource(new File(args[0]), 65536), new File(args[1]));
+        System.out.println("Wrote " + args[1]);
+    }
+
+    @Override
+    public int numFeatures() {
+        return numFeatures;
+    }
+
+    @Override
+    public long numRows() {
+        return numRows;
+    }
+
+    @Override
+    public int blockSize() {
+        return blockSize;
+    }
+
+    @Override
+    public BlockCursor openCursor() throws IOException {
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        channel.position(HEADER_BYTES);
+        final int rowBytes = (numFeatures + 1) * Double.BYTES;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(blockSize * rowBytes);
+        final DataBlock block = new DataBlock(numFeatures, blockSize);
+        return new BlockCursor() {
+            @Override
+            public DataBlock next() throws IOException {
+                buffer.clear();
+                while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                    // fill the buffer
+                }
+                buffer.flip();
+                int rows = buffer.remaining() / rowBytes;
+                DoubleBuffer doubles = buffer.asDoubleBuffer();
+                for (int i = 0; i < rows; i++) {
+                    for (int f = 0; f < numFeatures; f++) {
+                        block.columns[f][i] = doubles.get();
+                    }
+                    block.labels[i] = doubles.get();
+                }
+                block.size = rows;
+                return rows > 0 ? block : null;
+            }
+
+            @Override
+            public boolean skip() throws IOException {
+                long position = channel.position();
+                if (position >= channel.size()) {
+                    return false;
+                }
+                channel.position(Math.min(channel.size(), position + (long) blockSize * rowBytes));
+                return true;
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,121 @@
+package utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Serializable;
+import main.java.models.BlockCursor;
+import main.java.models.BlockSource;
+import main.java.models.DataBlock;
+
+/**
+ * Streams a CSV file (header line, label in the last column) block by block, so only one
+ * block is held in memory regardless of the file size. The file is re-read on every pass.
+ */
+public class CsvBlockSource implements BlockSource, Serializable {
+    private static final long serialVersionUID = 1L;
+    private final File file;
+    private final int blockSize;
+    private final int numFeatures;
+    private final long numRows;
+
+    public CsvBlockSource(File file, int blockSize) throws IOException {
+        this.file = file;
+        this.blockSize = blockSize;
+        // One pass up front to learn the shape of the data
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IOException("Empty CSV file: " + file);
+            }
+            this.numFeatures = header.split(",").length - 1;
+            long rows = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    rows++;
+                }
+            }
+            this.numRows = rows;
+        }
+    }
+
+    @Override
+    public int numFeatures() {
+        return numFeatures;
+    }
+
+    @Override
+    public long numRows() {
+        return numRows;
+    }
+
+    @Override
+    public int blockSize() {
+        return blockSize;
+    }
+
+    @Override
+    public BlockCursor openCursor() throws IOException {
+        final BufferedReader reader = new BufferedReader(new FileReader(file));
+        reader.readLine(); // header
+        final DataBlock block = new DataBlock(numFeatures, blockSize);
+        return new BlockCursor() {
+            @Override
+            public DataBlock next() throws IOException {
+                block.size = 0;
+                String line;
+                while (block.size < blockSize && (line = reader.readLine()) != null) {
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+                    parseRow(line, block, block.size++);
+                }
+                return block.size > 0 ? block : null;
+            }
+
+            @Override
+            public boolean skip() throws IOException {
+                int skipped = 0;
+                String line;
+                while (skipped < blockSize && (line = reader.readLine()) != null) {
+                    if (!line.trim().isEmpty()) {
+                        skipped++;
+                    }
+                }
+                return skipped > 0;
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    private void parseRow(String line, DataBlock block, int row) throws IOException {
+        int column = 0;
+        int start = 0;
+        for (int i = 0; i <= line.length(); i++) {
+            if (i == line.length() || line.charAt(i) == ',') {
+                double value;
+                try {
+                    value = Double.parseDouble(line.substring(start, i).trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid number in " + file + ": " + line);
+                }
+                if (column < numFeatures) {
+                    block.columns[column][row] = value;
+                } else if (column == numFeatures) {
+                    block.labels[row] = value;
+                }
+                column++;
+                start = i + 1;
+            }
+        }
+        if (column != numFeatures + 1) {
+            throw new IOException("Expected " + (numFeatures + 1) + " columns but found " + column + ": " + line);
+        }
+    }
+}
@@ -1,5 +1,122 @@
 package utils;
 
-public class Dataset {
-    // TODO: Implement data handling utilities
-}
\ No newline at end of file
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Primitive, row-ordered dataset: one double[] of features per row plus a label column.
+ * Used to feed classifiers directly without building Weka Instances.
+ */
+public class Dataset implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final String[] featureNames;
+    private final double[][] rows;
+    private final double[] labels;
+
+    public Dataset(String[] featureNames, double[][] rows, double[] labels) {
+        if (rows.length != labels.length) {
+            throw new IllegalArgumentException("Rows and labels must have the same length");
+        }
+        this.featureNames = featureNames;
+        this.rows = rows;
+        this.labels = labels;
+    }
+
+    /**
+     * Loads a CSV file with a header line; the last column is the label.
+     */
+    public static Dataset fromCsv(File file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IOException("Empty CSV file: " + file);
+            }
+            String[] columns = header.split(",");
+            String[] names = new String[columns.length - 1];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = columns[i].trim();
+            }
+
+            List<double[]> rowList = new ArrayList<>();
+            List<Double> labelList = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                String[] parts = line.split(",");
+                if (parts.length != columns.length) {
+                    throw new IOException("Expected " + columns.length + " columns but found " + parts.length + ": " + line);
+                }
+                double[] row = new double[names.length];
+                for (int i = 0; i < names.length; i++) {
+                    row[i] = Double.parseDouble(parts[i].trim());
+                }
+                rowList.add(row);
+                labelList.add(Double.parseDouble(parts[names.length].trim()));
+            }
+
+            double[] labels = new double[labelList.size()];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = labelList.get(i);
+            }
+            return new Dataset(names, rowList.toArray(new double[0][]), labels);
+        }
+    }
+
+    /**
+     * Copies Weka instances into a dataset; the class attribute must be the last attribute.
+     */
+    public static Dataset fromInstances(Instances data) {
+        int numFeatures = data.numAttributes() - 1;
+        String[] names = new String[numFeatures];
+        for (int j = 0; j < numFeatures; j++) {
+            names[j] = data.attribute(j).name();
+        }
+        double[][] rows = new double[data.numInstances()][numFeatures];
+        double[] labels = new double[data.numInstances()];
+        for (int i = 0; i < data.numInstances(); i++) {
+            Instance instance = data.instance(i);
+            for (int j = 0; j < numFeatures; j++) {
+                rows[i][j] = instance.value(j);
+            }
+            labels[i] = instance.classValue();
+        }
+        return new Dataset(names, rows, labels);
+    }
+
+    public int numRows() {
+        return rows.length;
+    }
+
+    public int numFeatures() {
+        return featureNames.length;
+    }
+
+    public String[] getFeatureNames() {
+        return featureNames;
+    }
+
+    public double[] getRow(int index) {
+        return rows[index];
+    }
+
+    public double getLabel(int index) {
+        return labels[index];
+    }
+
+    public double[][] getRows() {
+        return rows;
+    }
+
+    public double[] getLabels() {
+        return labels;
+    }
+}
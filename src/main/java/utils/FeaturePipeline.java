@@ -0,0 +1,162 @@
+package utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming feature engineering over OHLC rows (Open, High, Low, Close, Adj Close).
+ * Rolling indicators are kept in ring buffers so each row is an O(1) update. The same
+ * instance can transform a whole dataset in one pass or be fed row by row for live scoring.
+ */
+public class FeaturePipeline implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public static final int OPEN = 0;
+    public static final int HIGH = 1;
+    public static final int LOW = 2;
+    public static final int CLOSE = 3;
+    public static final int ADJ_CLOSE = 4;
+    private static final int RAW_COLUMNS = 5;
+
+    private final int shortWindow;
+    private final int longWindow;
+    private final int volatilityWindow;
+    private final int rsiWindow;
+    private final int numLags;
+
+    private final RingBuffer shortCloses;
+    private final RingBuffer longCloses;
+    private final RingBuffer returns;
+    private final RingBuffer gains;
+    private final RingBuffer losses;
+    private final RingBuffer lagCloses;
+    private int rowsSeen = 0;
+
+    public FeaturePipeline() {
+        this(5, 20, 10, 14, 3);
+    }
+
+    public FeaturePipeline(int shortWindow, int longWindow, int volatilityWindow, int rsiWindow, int numLags) {
+        this.shortWindow = shortWindow;
+        this.longWindow = longWindow;
+        this.volatilityWindow = volatilityWindow;
+        this.rsiWindow = rsiWindow;
+        this.numLags = numLags;
+        this.shortCloses = new RingBuffer(shortWindow);
+        this.longCloses = new RingBuffer(longWindow);
+        this.returns = new RingBuffer(volatilityWindow);
+        this.gains = new RingBuffer(rsiWindow);
+        this.losses = new RingBuffer(rsiWindow);
+        this.lagCloses = new RingBuffer(numLags + 1);
+    }
+
+    public String[] featureNames() {
+        List<String> names = new ArrayList<>();
+        names.add("Open");
+        names.add("High");
+        names.add("Low");
+        names.add("Close");
+        names.add("Adj Close");
+        names.add("Return");
+        names.add("Range");
+        names.add("Close-SMA" + shortWindow);
+        names.add("Close-SMA" + longWindow);
+        names.add("SMA" + shortWindow + "-SMA" + longWindow);
+        names.add("Volatility" + volatilityWindow);
+        names.add("RSI" + rsiWindow);
+        for (int lag = 1; lag <= numLags; lag++) {
+            names.add("Close-Lag" + lag);
+        }
+        return names.toArray(new String[0]);
+    }
+
+    public int numFeatures() {
+        return 12 + numLags;
+    }
+
+    // Number of rows that must be seen before every rolling window is full
+    public int warmupRows() {
+        return Math.max(Math.max(longWindow, shortWindow), Math.max(Math.max(volatilityWindow, rsiWindow), numLags) + 1);
+    }
+
+    public boolean isWarm() {
+        return rowsSeen >= warmupRows();
+    }
+
+    /**
+     * Consumes one raw OHLC row and writes the engineered features into out (allocation-free).
+     * Returns out. Features are defined before warm-up but use partially filled windows.
+     */
+    public double[] update(double[] raw, double[] out) {
+        if (raw.length < RAW_COLUMNS) {
+            throw new IllegalArgumentException("Expected at least " + RAW_COLUMNS + " OHLC columns but got " + raw.length);
+        }
+        double close = raw[CLOSE];
+        // Relative return on the previous close; 0 when there is none or it is 0
+        double previous = lagCloses.size() > 0 ? lagCloses.get(0) : 0.0;
+        double change = previous != 0.0 ? (close - previous) / previous : 0.0;
+        if (lagCloses.size() > 0) {
+            returns.add(change);
+            gains.add(Math.max(change, 0.0));
+            losses.add(Math.max(-change, 0.0));
+        }
+        shortCloses.add(close);
+        longCloses.add(close);
+        lagCloses.add(close);
+        rowsSeen++;
+
+        double smaShort = shortCloses.mean();
+        double smaLong = longCloses.mean();
+        double gainSum = gains.sum();
+        double lossSum = losses.sum();
+
+        int k = 0;
+        out[k++] = raw[OPEN];
+        out[k++] = raw[HIGH];
+        out[k++] = raw[LOW];
+        out[k++] = close;
+        out[k++] = raw[ADJ_CLOSE];
+        out[k++] = change;
+        out[k++] = raw[HIGH] - raw[LOW];
+        out[k++] = close - smaShort;
+        out[k++] = close - smaLong;
+        out[k++] = smaShort - smaLong;
+        out[k++] = returns.stdDev();
+        out[k++] = gainSum + lossSum > 0 ? gainSum / (gainSum + lossSum) : 0.5;
+        for (int lag = 1; lag <= numLags; lag++) {
+            out[k++] = lag < lagCloses.size() ? lagCloses.get(lag) : close;
+        }
+        return out;
+    }
+
+    /**
+     * Transforms a raw OHLC dataset in one pass, dropping the warm-up rows.
+     * Resets the pipeline state first.
+     */
+    public Dataset transform(Dataset raw) {
+        reset();
+        int warmup = Math.min(warmupRows() - 1, raw.numRows());
+        int outputRows = raw.numRows() - warmup;
+        double[][] rows = new double[outputRows][];
+        double[] labels = new double[outputRows];
+        double[] scratch = new double[numFeatures()];
+        for (int i = 0; i < raw.numRows(); i++) {
+            update(raw.getRow(i), scratch);
+            if (i >= warmup) {
+                rows[i - warmup] = scratch.clone();
+                labels[i - warmup] = raw.getLabel(i);
+            }
+        }
+        return new Dataset(featureNames(), rows, labels);
+    }
+
+    public void reset() {
+        shortCloses.clear();
+        longCloses.clear();
+        returns.clear();
+        gains.clear();
+        losses.clear();
+        lagCloses.clear();
+        rowsSeen = 0;
+    }
+}
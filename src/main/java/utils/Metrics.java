@@ -0,0 +1,188 @@
+package utils;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONObject;
+
+/**
+ * Process-wide counters and latency histograms for the hot paths.
+ * Disabled by default; enable with -Dmetrics.enabled=true or setEnabled(true).
+ * When disabled every call is a single volatile read.
+ */
+public final class Metrics {
+    // Counter names
+    public static final String TREE_EVALUATIONS = "gp.tree.evaluations";
+    public static final String TEMP_BYTES_WRITTEN = "temp.bytes.written";
+    public static final String RACING_ROWS_SAVED = "gp.racing.rows.saved";
+    // Timer names (histograms in nanoseconds)
+    public static final String GENERATION_TIME = "gp.generation.time";
+    public static final String FOLD_TRAINING_TIME = "fold.training.time";
+    public static final String SUBPROCESS_SPAWN_TIME = "mlp.subprocess.spawn.time";
+    public static final String PREDICTION_LATENCY = "prediction.latency";
+    public static final String CHECKPOINT_WRITE_TIME = "gp.checkpoint.write.time";
+
+    private static volatile boolean enabled = Boolean.getBoolean("metrics.enabled");
+    private static volatile long startNanos = System.nanoTime();
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService exporter;
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean value) {
+        if (value && !enabled) {
+            startNanos = System.nanoTime();
+        }
+        enabled = value;
+    }
+
+    public static void increment(String name) {
+        add(name, 1);
+    }
+
+    public static void add(String name, long delta) {
+        if (!enabled) {
+            return;
+        }
+        counters.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * Returns a start timestamp for stopTimer, or 0 when metrics are disabled.
+     */
+    public static long startTimer() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public static void stopTimer(String name, long start) {
+        if (start == 0L || !enabled) {
+            return;
+        }
+        recordNanos(name, System.nanoTime() - start);
+    }
+
+    public static void recordNanos(String name, long nanos) {
+        if (!enabled) {
+            return;
+        }
+        histogram(name).record(nanos);
+    }
+
+    public static LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, k -> new LatencyHistogram());
+    }
+
+    public static long getCount(String name) {
+        LongAdder adder = counters.get(name);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    public static void reset() {
+        counters.clear();
+        histograms.clear();
+        startNanos = System.nanoTime();
+    }
+
+    public static JSONObject snapshot() {
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+        JSONObject json = new JSONObject();
+        json.put("timestamp", System.currentTimeMillis());
+        json.put("elapsedSeconds", elapsedSeconds);
+
+        JSONObject counterJson = new JSONObject();
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+            long value = entry.getValue().sum();
+            JSONObject c = new JSONObject();
+            c.put("value", value);
+            c.put("perSecond", elapsedSeconds > 0 ? value / elapsedSeconds : 0.0);
+            counterJson.put(entry.getKey(), c);
+        }
+        json.put("counters", counterJson);
+
+        JSONObject timerJson = new JSONObject();
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+            timerJson.put(entry.getKey(), entry.getValue().toJson());
+        }
+        json.put("timersNanos", timerJson);
+        return json;
+    }
+
+    public static void exportTo(File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        // Write to a temporary file first so readers never see a partial snapshot
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileWriter writer = new FileWriter(tmp)) {
+            writer.write(snapshot().toString(2));
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            tmp.renameTo(file);
+        }
+    }
+
+    /**
+     * Starts writing a snapshot to the given file every intervalSeconds on a daemon thread.
+     */
+    public static synchronized void startPeriodicExport(File file, long intervalSeconds) {
+        if (!enabled || exporter != null) {
+            return;
+        }
+        exporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-exporter");
+            t.setDaemon(true);
+            return t;
+        });
+        exporter.scheduleAtFixedRate(() -> {
+            try {
+                exportTo(file);
+            } catch (IOException e) {
+                System.err.println("[Metrics] Could not write snapshot: " + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic exporter and writes a final snapshot. Waits for a periodic export
+     * still in progress first, since both write the same temporary file.
+     */
+    public static synchronized void stopPeriodicExport(File file) {
+        if (exporter != null) {
+            exporter.shutdown();
+            try {
+                if (!exporter.awaitTermination(30, TimeUnit.SECONDS)) {
+                    System.err.println("[Metrics] Periodic export did not finish; skipping final snapshot");
+                    exporter = null;
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                exporter = null;
+                return;
+            }
+            exporter = null;
+        }
+        if (enabled) {
+            try {
+                exportTo(file);
+            } catch (IOException e) {
+                System.err.println("[Metrics] Could not write snapshot: " + e.getMessage());
+            }
+        }
+    }
+}
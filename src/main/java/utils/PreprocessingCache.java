@@ -0,0 +1,301 @@
+package utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Disk cache of preprocessed datasets and cross-validation fold orders, so repeated
+ * experiments on the same data skip CSV parsing, filtering and stratification.
+ *
+ * Datasets are keyed by SHA-256 of the file's canonical path, its content hash and the
+ * preprocessing settings, so editing the file or changing the filters is a miss. They are
+ * stored as the serialized Weka header followed by the attribute values as raw doubles.
+ * Fold orders depend only on the class column, the seed and the number of folds and are
+ * keyed by exactly those. Enabled by default under cache/preprocessed; set
+ * -Dpreprocessing.cache=false to disable or -Dpreprocessing.cache.dir to move it.
+ */
+public class PreprocessingCache {
+    private static final int DATA_MAGIC = 0x47504944; // "GPID"
+    private static final int FOLDS_MAGIC = 0x47504346; // "GPCF"
+    private static final int VERSION = 1;
+
+    private final File directory;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    // Produces the preprocessed dataset on a cache miss
+    public interface Loader {
+        Instances load() throws Exception;
+    }
+
+    // A null directory disables caching; every request is then computed (and counted as a miss)
+    public PreprocessingCache(File directory) {
+        this.directory = directory;
+    }
+
+    public static PreprocessingCache fromSystemProperties() {
+        if ("false".equalsIgnoreCase(System.getProperty("preprocessing.cache"))) {
+            return new PreprocessingCache(null);
+        }
+        return new PreprocessingCache(new File(System.getProperty("preprocessing.cache.dir", "cache/preprocessed")));
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the dataset in file preprocessed as described by settings, from the cache when
+     * an entry for the same path, content and settings exists, otherwise from loader (and
+     * stores the result).
+     */
+    public Instances load(File file, String settings, Loader loader) throws Exception {
+        if (directory == null) {
+            misses.incrementAndGet();
+            return loader.load();
+        }
+        long start = System.nanoTime();
+        String key = sha256((file.getCanonicalPath() + "\n" + contentHash(file) + "\n" + settings + "\n" + VERSION)
+            .getBytes(StandardCharsets.UTF_8));
+        File entry = new File(directory, key + ".data");
+        if (entry.isFile()) {
+            try {
+                Instances data = readInstances(entry);
+                hits.incrementAndGet();
+                System.out.println("[Cache] Hit: " + file.getName() + " (" + data.numInstances() + " rows) loaded in "
+                    + String.format("%.1f", (System.nanoTime() - start) / 1e6) + " ms");
+                return data;
+            } catch (IOException | ClassNotFoundException e) {
+                System.err.println("[Cache] Ignoring unreadable entry " + entry + ": " + e.getMessage());
+            }
+        }
+        misses.incrementAndGet();
+        Instances data = loader.load();
+        try {
+            writeAtomically(entry, encodeInstances(data));
+        } catch (IOException e) {
+            System.err.println("[Cache] Could not cache " + file.getName() + ": " + e.getMessage());
+        }
+        System.out.println("[Cache] Miss: " + file.getName() + " preprocessed in "
+            + String.format("%.1f", (System.nanoTime() - start) / 1e6) + " ms");
+        return data;
+    }
+
+    /**
+     * Returns a copy of data in the order data.randomize(new Random(seed)) followed by
+     * data.stratify(numFolds) would produce, so trainCV/testCV give the usual folds. Weka's
+     * shuffle depends only on the row count and the stratification only on the class values,
+     * so the order is computed on the class column alone and cached by its hash.
+     */
+    public Instances stratifiedFolds(Instances data, long seed, int numFolds) {
+        int n = data.numInstances();
+        double[] classes = new double[n];
+        for (int i = 0; i < n; i++) {
+            classes[i] = data.instance(i).classValue();
+        }
+        int[] order = null;
+        File entry = null;
+        if (directory != null) {
+            ByteBuffer bytes = ByteBuffer.allocate(8 * n + 8 + 4);
+            bytes.asDoubleBuffer().put(classes);
+            bytes.position(8 * n);
+            bytes.putLong(seed).putInt(numFolds);
+            entry = new File(directory, sha256(bytes.array()) + ".folds");
+            try {
+                order = readOrder(entry, n);
+            } catch (IOException e) {
+                System.err.println("[Cache] Ignoring unreadable entry " + entry + ": " + e.getMessage());
+            }
+        }
+        if (order != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            order = computeOrder(data, classes, seed, numFolds);
+            if (entry != null) {
+                ByteBuffer bytes = ByteBuffer.allocate(12 + 4 * n);
+                bytes.putInt(FOLDS_MAGIC).putInt(VERSION).putInt(n);
+                bytes.asIntBuffer().put(order);
+                try {
+                    writeAtomically(entry, bytes.array());
+                } catch (IOException e) {
+                    System.err.println("[Cache] Could not cache fold order: " + e.getMessage());
+                }
+            }
+        }
+        Instances folds = new Instances(data, n);
+        for (int i : order) {
+            folds.add(data.instance(i));
+        }
+        return folds;
+    }
+
+    // Advances random past the draws Instances.randomize makes for n rows
+    public static void skipShuffle(Random random, int n) {
+        for (int j = n - 1; j > 0; j--) {
+            random.nextInt(j + 1);
+        }
+    }
+
+    // Applies Weka's randomize and stratify to a two-column copy holding each row's index
+    private static int[] computeOrder(Instances data, double[] classes, long seed, int numFolds) {
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        attributes.add(new Attribute("row"));
+        attributes.add((Attribute) data.classAttribute().copy());
+        Instances rows = new Instances("rows", attributes, classes.length);
+        rows.setClassIndex(1);
+        for (int i = 0; i < classes.length; i++) {
+            rows.add(new DenseInstance(1.0, new double[] {i, classes[i]}));
+        }
+        rows.randomize(new Random(seed));
+        rows.stratify(numFolds);
+        int[] order = new int[classes.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = (int) rows.instance(i).value(0);
+        }
+        return order;
+    }
+
+    private static int[] readOrder(File entry, int n) throws IOException {
+        if (!entry.isFile()) {
+            return null;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(entry.toPath()));
+        if (bytes.remaining() != 12 + 4 * n || bytes.getInt() != FOLDS_MAGIC || bytes.getInt() != VERSION || bytes.getInt() != n) {
+            return null;
+        }
+        int[] order = new int[n];
+        bytes.asIntBuffer().get(order);
+        return order;
+    }
+
+    /**
+     * Layout: int magic, int version, int header length, the Java-serialized empty Instances
+     * (attributes, relation name and class index), int rows, int attributes, byte weighted,
+     * then the values row after row and, if weighted, one weight per row (big-endian doubles).
+     */
+    private static byte[] encodeInstances(Instances data) throws IOException {
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(headerBytes)) {
+            out.writeObject(new Instances(data, 0));
+        }
+        int rows = data.numInstances();
+        int columns = data.numAttributes();
+        boolean weighted = false;
+        for (int i = 0; i < rows && !weighted; i++) {
+            weighted = data.instance(i).weight() != 1.0;
+        }
+        long size = 12 + headerBytes.size() + 9 + 8 * (rows * (long) columns + (weighted ? rows : 0));
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("dataset too large for a cache entry (" + size + " bytes)");
+        }
+        ByteBuffer bytes = ByteBuffer.allocate((int) size);
+        bytes.putInt(DATA_MAGIC).putInt(VERSION).putInt(headerBytes.size()).put(headerBytes.toByteArray());
+        bytes.putInt(rows).putInt(columns).put((byte) (weighted ? 1 : 0));
+        DoubleBuffer values = bytes.asDoubleBuffer();
+        for (int i = 0; i < rows; i++) {
+            values.put(data.instance(i).toDoubleArray());
+        }
+        if (weighted) {
+            for (int i = 0; i < rows; i++) {
+                values.put(data.instance(i).weight());
+            }
+        }
+        return bytes.array();
+    }
+
+    private static Instances readInstances(File entry) throws IOException, ClassNotFoundException {
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(entry.toPath()));
+        if (bytes.getInt() != DATA_MAGIC || bytes.getInt() != VERSION) {
+            throw new IOException("not a preprocessed dataset of this version");
+        }
+        byte[] headerBytes = new byte[bytes.getInt()];
+        bytes.get(headerBytes);
+        Instances header;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(headerBytes))) {
+            header = (Instances) in.readObject();
+        }
+        int rows = bytes.getInt();
+        int columns = bytes.getInt();
+        boolean weighted = bytes.get() != 0;
+        DoubleBuffer values = bytes.asDoubleBuffer();
+        Instances data = new Instances(header, rows);
+        double[][] rowValues = new double[rows][columns];
+        for (int i = 0; i < rows; i++) {
+            values.get(rowValues[i]);
+        }
+        for (int i = 0; i < rows; i++) {
+            Instance instance = new DenseInstance(weighted ? values.get() : 1.0, rowValues[i]);
+            data.add(instance);
+        }
+        return data;
+    }
+
+    // Writes to a temporary file and renames it, so readers never see a partial entry
+    private void writeAtomically(File entry, byte[] bytes) throws IOException {
+        directory.mkdirs();
+        File temp = File.createTempFile(entry.getName(), ".tmp", directory);
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(bytes);
+        }
+        Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // SHA-256 of the file's bytes, as hex
+    public static String contentHash(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    private static String sha256(byte[] bytes) {
+        return hex(newDigest().digest(bytes));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,198 @@
+package utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import org.json.JSONObject;
+
+/**
+ * Append-only store of run results. Full records are JSON lines in segment files
+ * (segment-00000.jsonl, ...; a new segment starts once the current one reaches SEGMENT_BYTES)
+ * and index.jsonl holds one short line per record with the indexed keys (classifier, seed,
+ * dataset, timestamp) and where the record lives. Queries filter the index and then read only
+ * the matching records, so nothing is re-parsed from text reports.
+ */
+public class ResultStore {
+    public static final long SEGMENT_BYTES = 16L << 20;
+    private static final String INDEX_FILE = "index.jsonl";
+    private static final String LOCK_FILE = "store.lock";
+
+    private final File directory;
+
+    /**
+     * An index line: the keys records can be selected by, plus the record's location.
+     */
+    public static class Entry {
+        public final String classifier;
+        public final long seed;
+        public final String dataset;
+        // Milliseconds since the epoch
+        public final long timestamp;
+        final int segment;
+        final long offset;
+        final int length;
+
+        Entry(String classifier, long seed, String dataset, long timestamp, int segment, long offset, int length) {
+            this.classifier = classifier;
+            this.seed = seed;
+            this.dataset = dataset;
+            this.timestamp = timestamp;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("classifier", classifier);
+            json.put("seed", seed);
+            json.put("dataset", dataset);
+            json.put("timestamp", timestamp);
+            json.put("segment", segment);
+            json.put("offset", offset);
+            json.put("length", length);
+            return json;
+        }
+
+        static Entry fromJson(JSONObject json) {
+            return new Entry(json.getString("classifier"), json.getLong("seed"), json.getString("dataset"),
+                json.getLong("timestamp"), json.getInt("segment"), json.getLong("offset"), json.getInt("length"));
+        }
+    }
+
+    public ResultStore(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Appends a record, which must contain the indexed keys classifier, seed, dataset and
+     * timestamp. The record is written before its index line, so a crash can leave an
+     * unindexed record but never an index line without its record. Safe to call from several
+     * processes at once.
+     */
+    public synchronized Entry append(JSONObject record) throws IOException {
+        byte[] bytes = (record.toString() + "\n").getBytes(StandardCharsets.UTF_8);
+        directory.mkdirs();
+        try (FileChannel lockChannel = FileChannel.open(new File(directory, LOCK_FILE).toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = lockChannel.lock();
+            try {
+                return appendLocked(record, bytes);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    // Writes the record and its index line; the caller holds the store lock
+    private Entry appendLocked(JSONObject record, byte[] bytes) throws IOException {
+        int segment = lastSegment();
+        File segmentFile = segmentFile(segment);
+        if (segmentFile.length() > 0 && segmentFile.length() + bytes.length > SEGMENT_BYTES) {
+            segmentFile = segmentFile(++segment);
+        }
+        long offset;
+        try (FileChannel channel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            offset = channel.size();
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        // The length excludes the newline
+        Entry entry = new Entry(record.getString("classifier"), record.getLong("seed"), record.getString("dataset"),
+            record.getLong("timestamp"), segment, offset, bytes.length - 1);
+        try (BufferedWriter writer = Files.newBufferedWriter(new File(directory, INDEX_FILE).toPath(),
+                 StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(entry.toJson().toString());
+            writer.newLine();
+        }
+        return entry;
+    }
+
+    /**
+     * Index entries matching the filter, in the order they were appended.
+     */
+    public List<Entry> query(Predicate<Entry> filter) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        File index = new File(directory, INDEX_FILE);
+        if (!index.exists()) {
+            return entries;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(index.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                Entry entry = Entry.fromJson(new JSONObject(line));
+                if (filter.test(entry)) {
+                    entries.add(entry);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the full records of the given entries, in the same order, opening each segment once.
+     */
+    public List<JSONObject> read(List<Entry> entries) throws IOException {
+        List<JSONObject> records = new ArrayList<>(entries.size());
+        Map<Integer, RandomAccessFile> segments = new HashMap<>();
+        try {
+            for (Entry entry : entries) {
+                RandomAccessFile file = segments.get(entry.segment);
+                if (file == null) {
+                    file = new RandomAccessFile(segmentFile(entry.segment), "r");
+                    segments.put(entry.segment, file);
+                }
+                byte[] bytes = new byte[entry.length];
+                file.seek(entry.offset);
+                file.readFully(bytes);
+                records.add(new JSONObject(new String(bytes, StandardCharsets.UTF_8)));
+            }
+        } finally {
+            for (RandomAccessFile file : segments.values()) {
+                file.close();
+            }
+        }
+        return records;
+    }
+
+    private File segmentFile(int segment) {
+        return new File(directory, String.format("segment-%05d.jsonl", segment));
+    }
+
+    // Highest existing segment number, 0 for an empty store
+    private int lastSegment() {
+        int last = 0;
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.matches("segment-\\d+\\.jsonl")) {
+                    last = Math.max(last, Integer.parseInt(name.substring(8, name.length() - 6)));
+                }
+            }
+        }
+        return last;
+    }
+}
@@ -0,0 +1,119 @@
+package utils;
+
+import java.io.Serializable;
+
+/**
+ * Fixed-capacity circular buffer of doubles that keeps a running mean and sum of squared
+ * deviations (Welford), so rolling mean and variance are O(1) per update. Both are
+ * recomputed from the stored values once per capacity evictions, so rounding error from
+ * the remove/add updates does not build up over a long series.
+ */
+public class RingBuffer implements Serializable {
+    private static final long serialVersionUID = 2L;
+    private final double[] values;
+    private int head = 0;
+    private int size = 0;
+    private double mean = 0.0;
+    // Sum of squared deviations from the mean
+    private double m2 = 0.0;
+    private int evictions = 0;
+
+    public RingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        this.values = new double[capacity];
+    }
+
+    // Adds a value, evicting the oldest one when the buffer is full
+    public void add(double value) {
+        if (size == values.length) {
+            double evicted = values[head];
+            values[head] = value;
+            head = (head + 1) % values.length;
+            if (++evictions == values.length) {
+                recompute();
+            } else {
+                // Replace evicted by value with the count unchanged
+                double oldMean = mean;
+                mean += (value - evicted) / size;
+                m2 += (value - evicted) * (value - mean + evicted - oldMean);
+            }
+        } else {
+            values[head] = value;
+            head = (head + 1) % values.length;
+            size++;
+            double delta = value - mean;
+            mean += delta / size;
+            m2 += delta * (value - mean);
+        }
+    }
+
+    // Exact two-pass mean and squared deviations over the stored values
+    private void recompute() {
+        evictions = 0;
+        double total = 0.0;
+        for (int i = 0; i < size; i++) {
+            total += values[i];
+        }
+        mean = total / size;
+        double squares = 0.0;
+        for (int i = 0; i < size; i++) {
+            double deviation = values[i] - mean;
+            squares += deviation * deviation;
+        }
+        m2 = squares;
+    }
+
+    // Returns the value added lag updates ago (0 = most recent)
+    public double get(int lag) {
+        if (lag < 0 || lag >= size) {
+            throw new IndexOutOfBoundsException("Lag " + lag + " outside buffer of size " + size);
+        }
+        int index = head - 1 - lag;
+        if (index < 0) {
+            index += values.length;
+        }
+        return values[index];
+    }
+
+    public double mean() {
+        return size == 0 ? 0.0 : mean;
+    }
+
+    public double variance() {
+        if (size < 2) {
+            return 0.0;
+        }
+        // The remove/add update can leave m2 a rounding error below zero
+        return Math.max(0.0, m2 / size);
+    }
+
+    public double stdDev() {
+        return Math.sqrt(variance());
+    }
+
+    public double sum() {
+        return mean * size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    public boolean isFull() {
+        return size == values.length;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+        mean = 0.0;
+        m2 = 0.0;
+        evictions = 0;
+    }
+}
@@ -0,0 +1,129 @@
+package utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Runs external processes (the Python MLP) without tying up platform threads while they
+ * work. Output is drained on a virtual thread and the caller waits on the process's exit
+ * future, so callers can themselves be virtual threads and hundreds of runs can be pending
+ * at once. A fair semaphore bounds how many processes actually run (default: one per core,
+ * -Dsubprocess.concurrency to change). Processes that time out, whose caller is interrupted,
+ * or that are still alive when the JVM exits are killed together with their children.
+ */
+public final class SubprocessRunner {
+    private static final long KILL_GRACE_MILLIS = 2000;
+    private static volatile Semaphore permits =
+        new Semaphore(Math.max(1, Integer.getInteger("subprocess.concurrency", Runtime.getRuntime().availableProcessors())), true);
+    private static final Set<Process> running = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> running.forEach(SubprocessRunner::kill), "subprocess-reaper"));
+    }
+
+    private SubprocessRunner() {
+    }
+
+    public static final class Result {
+        public final int exitCode;
+        // Combined stdout and stderr, line by line
+        public final List<String> lines;
+
+        Result(int exitCode, List<String> lines) {
+            this.exitCode = exitCode;
+            this.lines = lines;
+        }
+    }
+
+    /**
+     * Sets how many processes may run at once; runs already holding a permit are unaffected.
+     */
+    public static void setMaxConcurrency(int maxConcurrency) {
+        permits = new Semaphore(Math.max(1, maxConcurrency), true);
+    }
+
+    /**
+     * Runs command with stderr merged into stdout, passing each output line to onLine (may be
+     * null) as it arrives. Blocks until a permit is free and the process has exited. A null
+     * or zero timeout means no limit.
+     *
+     * @throws TimeoutException if the process outlived the timeout; it has been killed
+     * @throws InterruptedException if the caller was interrupted; the process has been killed
+     */
+    public static Result run(List<String> command, Duration timeout, Consumer<String> onLine)
+            throws IOException, InterruptedException, TimeoutException {
+        Semaphore semaphore = permits;
+        semaphore.acquire();
+        try {
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.redirectErrorStream(true);
+            long spawnStart = Metrics.startTimer();
+            Process process = pb.start();
+            Metrics.stopTimer(Metrics.SUBPROCESS_SPAWN_TIME, spawnStart);
+            running.add(process);
+            try {
+                List<String> lines = new ArrayList<>();
+                Thread drainer = Thread.ofVirtual().name("subprocess-output-" + process.pid()).start(() -> {
+                    try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            lines.add(line);
+                            if (onLine != null) {
+                                onLine.accept(line);
+                            }
+                        }
+                    } catch (IOException e) {
+                        // The pipe closes under us when the process is killed
+                    }
+                });
+                int exitCode;
+                try {
+                    // Waiting on the exit future parks instead of pinning a carrier thread
+                    exitCode = timeout == null || timeout.isZero()
+                        ? process.onExit().get().exitValue()
+                        : process.onExit().get(timeout.toMillis(), TimeUnit.MILLISECONDS).exitValue();
+                } catch (TimeoutException e) {
+                    kill(process);
+                    throw new TimeoutException("Killed after " + timeout.toSeconds() + " s: " + String.join(" ", command));
+                } catch (InterruptedException e) {
+                    kill(process);
+                    throw e;
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
+                }
+                drainer.join();
+                return new Result(exitCode, lines);
+            } finally {
+                running.remove(process);
+            }
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    // Asks the process tree to stop, then forces it after a grace period
+    private static void kill(Process process) {
+        process.descendants().forEach(ProcessHandle::destroy);
+        process.destroy();
+        try {
+            if (process.waitFor(KILL_GRACE_MILLIS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+}
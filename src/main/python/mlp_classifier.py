@@ -7,7 +7,7 @@ import pickle
 import sys
 import os
 
-def train_model(data_path, model_path, seed):
+def train_model(data_path, model_path, seed, previous_model=None, hidden=(64, 32), alpha=0.001):
     # Load data
     data = pd.read_csv(data_path)
     X = data.iloc[:, :-1]
@@ -16,6 +16,24 @@ def train_model(data_path, model_path, seed):
     # Split into train and validation sets
     X_train, X_val, y_train, y_val = train_test_split(X, y, test_size=0.2, random_state=seed)
     
+    if previous_model is not None and os.path.exists(previous_model):
+        # Continue from the previous weights; keep the previous scaler so the
+        # inputs the network was trained on keep the same scale. The result goes
+        # to model_path, so the previous model survives a failed run
+        with open(previous_model, 'rb') as f:
+            mlp, scaler = pickle.load(f)
+        mlp.set_params(warm_start=True)
+        X_train_scaled = scaler.transform(X_train)
+        X_val_scaled = scaler.transform(X_val)
+        print("Warm start from previous model")
+        mlp.fit(X_train_scaled, y_train)
+        val_score = mlp.score(X_val_scaled, y_val)
+        print(f"Validation accuracy: {val_score:.4f}")
+        with open(model_path, 'wb') as f:
+            pickle.dump((mlp, scaler), f)
+        print("Model trained and saved successfully")
+        return
+
     # Scale features
     scaler = StandardScaler()
     X_train_scaled = scaler.fit_transform(X_train)
@@ -23,10 +41,10 @@ def train_model(data_path, model_path, seed):
     
     # Train MLP with improved architecture
     mlp = MLPClassifier(
-        hidden_layer_sizes=(64, 32),     # Reduced complexity
+        hidden_layer_sizes=hidden,       # Default (64, 32)
         activation='relu',               # ReLU activation for better gradient flow
         solver='adam',                   # Adam optimizer for better convergence
-        alpha=0.001,                     # Increased L2 regularization
+        alpha=alpha,                     # L2 regularization, default 0.001
         batch_size=32,                   # Fixed batch size
         learning_rate='adaptive',        # Adaptive learning rate
         max_iter=1000,                   # Reduced iterations
@@ -49,7 +67,13 @@ def train_model(data_path, model_path, seed):
     
     print("Model trained and saved successfully")
 
-def predict(data_path, model_path):
+def option(flags, name, default):
+    # Value following name in flags, or default when the flag is absent
+    if name in flags and flags.index(name) + 1 < len(flags):
+        return flags[flags.index(name) + 1]
+    return default
+
+def predict(data_path, model_path, proba=False):
     # Load model and scaler
     with open(model_path, 'rb') as f:
         mlp, scaler = pickle.load(f)
@@ -59,6 +83,17 @@ def predict(data_path, model_path):
     X = data.iloc[:, :-1]
     X_scaled = scaler.transform(X)
     
+    if proba:
+        # Probability of class 1 for every instance, in input order
+        classes = [float(c) for c in mlp.classes_]
+        if 1.0 in classes:
+            probabilities = mlp.predict_proba(X_scaled)[:, classes.index(1.0)]
+        else:
+            probabilities = np.zeros(len(X_scaled))
+        for p in probabilities:
+            print(f"{p:.10f}")
+        return
+
     # Predict all instances
     predictions = mlp.predict(X_scaled)
     for pred in predictions:
@@ -66,7 +101,7 @@ def predict(data_path, model_path):
 
 if __name__ == "__main__":
     if len(sys.argv) < 4:
-        print("Usage: python mlp_classifier.py <data_path> <model_path> <seed> [--predict]")
+        print("Usage: python mlp_classifier.py <data_path> <model_path> <seed> [--predict [--proba] | --warm-start <previous_model_path>] [--hidden 64,32] [--alpha 0.001]")
         sys.exit(1)
     
     data_path = sys.argv[1]
@@ -76,7 +111,10 @@ if __name__ == "__main__":
     # Create models directory if it doesn't exist
     os.makedirs(os.path.dirname(model_path), exist_ok=True)
     
-    if len(sys.argv) > 4 and sys.argv[4] == "--predict":
-        predict(data_path, model_path)
+    flags = sys.argv[4:]
+    if "--predict" in flags:
+        predict(data_path, model_path, proba="--proba" in flags)
     else:
-        train_model(data_path, model_path, seed) 
\ No newline at end of file
+        hidden = tuple(int(units) for units in option(flags, "--hidden", "64,32").split(","))
+        alpha = float(option(flags, "--alpha", "0.001"))
+        train_model(data_path, model_path, seed, previous_model=option(flags, "--warm-start", None), hidden=hidden, alpha=alpha) 
\ No newline at end of file
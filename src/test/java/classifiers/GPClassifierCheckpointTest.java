@@ -0,0 +1,104 @@
+package classifiers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import main.java.models.Calibration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.NumericToNominal;
+
+/**
+ * A run resumed from a mid-run checkpoint must end with the same model as the run that
+ * wrote the checkpoint.
+ */
+public class GPClassifierCheckpointTest {
+    private static final long SEED = 7;
+    private static final int GENERATIONS = 12;
+    private static final int CHECKPOINT_EVERY = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // A checkpoint file that survives the end of the run, so its last (mid-run) state can be copied
+    private static final class KeptFile extends File {
+        private static final long serialVersionUID = 1L;
+
+        KeptFile(File file) {
+            super(file.getPath());
+        }
+
+        @Override
+        public boolean delete() {
+            return false;
+        }
+    }
+
+    @Test
+    public void resumedRunMatchesUninterruptedRun() throws Exception {
+        Instances data = loadTrainingData();
+
+        File checkpoint = new KeptFile(new File(folder.getRoot(), "gp.ckpt"));
+        GPClassifier full = newClassifier();
+        full.setCheckpoint(checkpoint, CHECKPOINT_EVERY);
+        full.buildClassifier(data);
+        assertTrue("the run should have written a checkpoint", checkpoint.isFile());
+
+        File copy = new File(folder.getRoot(), "gp-copy.ckpt");
+        Files.copy(checkpoint.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        GPClassifier resumed = newClassifier();
+        resumed.setCheckpoint(copy, CHECKPOINT_EVERY);
+        String log = buildCapturingOutput(resumed, data);
+
+        assertTrue("the second run should resume from the copy:\n" + log, log.contains("[GP] Resuming from checkpoint"));
+        assertFalse("a finished run removes its checkpoint", copy.exists());
+        assertEquals(full.getModelStructure(), resumed.getModelStructure());
+        Calibration expected = full.getCalibration();
+        Calibration actual = resumed.getCalibration();
+        assertEquals(expected.getA(), actual.getA(), 0.0);
+        assertEquals(expected.getB(), actual.getB(), 0.0);
+        assertEquals(expected.getThreshold(), actual.getThreshold(), 0.0);
+    }
+
+    private static GPClassifier newClassifier() {
+        GPClassifier gp = new GPClassifier();
+        gp.setSeed(SEED);
+        gp.setGenerations(GENERATIONS);
+        return gp;
+    }
+
+    private static String buildCapturingOutput(GPClassifier gp, Instances data) throws Exception {
+        PrintStream original = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true, StandardCharsets.UTF_8));
+        try {
+            gp.buildClassifier(data);
+        } finally {
+            System.setOut(original);
+        }
+        String log = captured.toString(StandardCharsets.UTF_8);
+        original.print(log);
+        return log;
+    }
+
+    // Loaded the way StockClassifier does, without its on-disk preprocessing cache
+    private static Instances loadTrainingData() throws Exception {
+        Instances data = new DataSource("data/BTC_train.csv").getDataSet();
+        data.setClassIndex(data.numAttributes() - 1);
+        NumericToNominal convert = new NumericToNominal();
+        convert.setAttributeIndices("" + (data.classIndex() + 1));
+        convert.setInputFormat(data);
+        return Filter.useFilter(data, convert);
+    }
+}